@@ -0,0 +1,174 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.decoders.processing.fft.FourierTransform;
+
+/**
+ * How audio is cut into frames for analysis: the number of samples transformed at a
+ * time (the FFT size), the number of samples between the starts of consecutive frames
+ * (the hop size), and the window applied to each frame before it is transformed.
+ *
+ * The hop size sets the time resolution of the detected beats: one frame every
+ * hopSize / 44100 seconds. A hop smaller than the FFT size makes frames overlap, for
+ * more precise beat times at the cost of transforming more frames, e.g. a hop of 256
+ * for tight sync in a game. A larger hop analyzes fewer frames, e.g. a hop of 2048
+ * for a quick scan of a large library. The threshold each frame is compared against
+ * always averages roughly the same length of audio, about 230 ms on either side, so
+ * changing the hop doesn't change what counts as a beat.
+ *
+ * Sizes are in samples of 44.1 kHz audio. For audio at another rate, such as the
+ * output of a decoder running at a reduced rate, forSampleRate() gives the config
+ * whose frames span about the same lengths of time, and still leave no audio out
+ * between them unless this one did; BeatDetector does this by itself for decoders
+ * that implement SampleRateDecoder.
+ *     @see v4lk.lwbd.decoders.SampleRateDecoder
+ *
+ * @author Quentin Young
+ */
+public class AnalysisConfig {
+
+    public static enum Window { NONE, HAMMING, HANN }
+
+    /**
+     * 1024 sample frames, not overlapping, with a Hamming window: about 23 ms per frame
+     */
+    public static final AnalysisConfig DEFAULT = new AnalysisConfig(1024, 1024, Window.HAMMING);
+
+    /**
+     * length of audio, in samples, the threshold window extends on each side of a frame
+     */
+    private static final int THRESHOLD_SAMPLES = 10 * 1024;
+    /**
+     * sample rate the sizes of a config made with the public constructor are meant for
+     */
+    private static final int DEFAULT_SAMPLE_RATE = 44100;
+
+    private final int fftSize;
+    private final int hopSize;
+    private final Window window;
+    private final int sampleRate;
+
+    /**
+     * @param fftSize number of samples in each frame, a power of two of at least 64
+     * @param hopSize number of samples between the starts of consecutive frames. May be
+     *                larger than fftSize, in which case the samples between frames are
+     *                skipped.
+     * @param window window applied to each frame before it is transformed
+     */
+    public AnalysisConfig(int fftSize, int hopSize, Window window) {
+        if (fftSize < 64 || (fftSize & (fftSize - 1)) != 0)
+            throw new IllegalArgumentException("FFT size must be a power of two of at least 64");
+        if (hopSize <= 0)
+            throw new IllegalArgumentException("Hop size must be positive");
+
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.sampleRate = DEFAULT_SAMPLE_RATE;
+    }
+
+    private AnalysisConfig(int fftSize, int hopSize, Window window, int sampleRate) {
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.window = window;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Get the equivalent of this config for audio at another sample rate: the FFT size
+     * is scaled to the nearest power of two (but no less than 64) and the hop size to
+     * the nearest sample, so frames span about the same lengths of time. If this
+     * config's hop is no larger than its FFT size, the scaled hop is capped at the
+     * scaled FFT size, so that rounding the FFT size down doesn't open gaps between
+     * frames.
+     * @param sampleRate sample rate of the audio, in Hz
+     * @return the config for that rate; this config if it already is
+     */
+    public AnalysisConfig forSampleRate(int sampleRate) {
+        if (sampleRate <= 0)
+            throw new IllegalArgumentException("Sample rate must be positive");
+        if (sampleRate == this.sampleRate)
+            return this;
+
+        double scale = (double) sampleRate / this.sampleRate;
+        // nearest power of two on a log scale, i.e. the one the frame's length is closest to in octaves
+        int fft = Math.max(64, 1 << (int) Math.round(Math.log(fftSize * scale) / Math.log(2)));
+        int hop = (int) Math.max(1, Math.round(hopSize * scale));
+        if (hopSize <= fftSize)
+            hop = Math.min(hop, fft);
+        return new AnalysisConfig(fft, hop, window, sampleRate);
+    }
+
+    /**
+     * @return the number of samples in each frame
+     */
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    /**
+     * @return the number of samples between the starts of consecutive frames
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * @return the window applied to each frame
+     */
+    public Window getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the sample rate of the audio this config is for, in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of frames on each side of a frame whose flux its threshold
+     *         is calculated from
+     */
+    int getThresholdRadius() {
+        return thresholdRadius(hopSize, sampleRate);
+    }
+
+    /**
+     * @return the FourierTransform window constant for this config's window
+     */
+    int fourierWindow() {
+        switch (window) {
+            case HAMMING:
+                return FourierTransform.HAMMING;
+            case HANN:
+                return FourierTransform.HANN;
+            default:
+                return FourierTransform.NONE;
+        }
+    }
+
+    /**
+     * @return the threshold radius, in frames, for frames hopSize samples of 44.1 kHz
+     *         audio apart
+     */
+    static int thresholdRadius(int hopSize) {
+        return Math.max(1, Math.round((float) THRESHOLD_SAMPLES / hopSize));
+    }
+
+    /**
+     * @return the threshold radius, in frames, for frames hopSize samples of audio at
+     *         sampleRate apart
+     */
+    static int thresholdRadius(int hopSize, int sampleRate) {
+        if (sampleRate == DEFAULT_SAMPLE_RATE)
+            return thresholdRadius(hopSize);
+        return Math.max(1, Math.round((float) THRESHOLD_SAMPLES * sampleRate / ((float) DEFAULT_SAMPLE_RATE * hopSize)));
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisConfig[fft " + fftSize + ", hop " + hopSize + ", " + window + " window"
+                + (sampleRate != DEFAULT_SAMPLE_RATE ? ", " + sampleRate + " Hz]" : "]");
+    }
+}
@@ -0,0 +1,269 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.BeatDetector.AudioType;
+import v4lk.lwbd.BeatDetector.DetectorSensitivity;
+import v4lk.lwbd.decoders.Decoder;
+import v4lk.lwbd.util.Beat;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs beat detection over many files at once while bounding how much CPU and
+ * memory the work may use.
+ *
+ * Every file goes through two stages. The I/O stage waits until the file fits in
+ * the memory budget and then reads it into memory; it runs on the I/O executor,
+ * which can be a virtual thread executor where one is available. The analysis
+ * stage decodes and analyzes the file on a fixed pool of worker threads, so no
+ * more than <parallelism> decoders are ever live. The file's share of the budget
+ * is released when its analysis finishes.
+ *
+ * @author Quentin Young
+ */
+public class BatchBeatDetector {
+
+    /**
+     * memory charged to each analysis on top of the size of its file, covering
+     * decoder state and analysis buffers
+     */
+    private static final long ANALYSIS_OVERHEAD = 256 * 1024;
+
+    private final ExecutorService cpuExecutor;
+    private final Executor ioExecutor;
+    private final boolean ownsIoExecutor;
+    /**
+     * memory budget, one permit per kilobyte
+     */
+    private final Semaphore memory;
+    private final int memoryKb;
+
+    private final AtomicLong filesCompleted = new AtomicLong();
+    private final AtomicLong framesAnalyzed = new AtomicLong();
+    private final AtomicLong startNanos = new AtomicLong(-1);
+
+    /**
+     * Initialize a batch detector that reads files on its own pool of I/O threads.
+     * @param parallelism maximum number of files decoded and analyzed at once
+     * @param memoryBudget maximum number of bytes of audio files and analysis state
+     *                     held in memory at once
+     */
+    public BatchBeatDetector(int parallelism, long memoryBudget) {
+        this(parallelism, memoryBudget, Executors.newFixedThreadPool(2 * parallelism), true);
+    }
+
+    /**
+     * Initialize a batch detector that reads files on the given executor. On Java 21 and up,
+     * Executors.newVirtualThreadPerTaskExecutor() is a good choice: threads waiting for memory
+     * or for the disk then cost next to nothing.
+     * @param parallelism maximum number of files decoded and analyzed at once
+     * @param memoryBudget maximum number of bytes of audio files and analysis state
+     *                     held in memory at once
+     * @param ioExecutor executor to read files on. Not shut down by shutdown().
+     */
+    public BatchBeatDetector(int parallelism, long memoryBudget, Executor ioExecutor) {
+        this(parallelism, memoryBudget, ioExecutor, false);
+    }
+
+    private BatchBeatDetector(int parallelism, long memoryBudget, Executor ioExecutor, boolean ownsIoExecutor) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        if (memoryBudget < 1024)
+            throw new IllegalArgumentException("Memory budget must be at least 1 KB");
+
+        this.cpuExecutor = Executors.newFixedThreadPool(parallelism);
+        this.ioExecutor = ioExecutor;
+        this.ownsIoExecutor = ownsIoExecutor;
+        this.memoryKb = (int) Math.min(Integer.MAX_VALUE, memoryBudget / 1024);
+        this.memory = new Semaphore(memoryKb, true);
+    }
+
+    /**
+     * Queue a file for beat detection.
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @param sensitivity How sensitive the detector will be.
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     * @return A future that completes with the file's beats, or exceptionally with
+     *         an IOException on read error.
+     */
+    public CompletableFuture<Beat[]> submit(final File audio, final AudioType type, final DetectorSensitivity sensitivity) {
+        startNanos.compareAndSet(-1, System.nanoTime());
+
+        final CompletableFuture<Beat[]> result = new CompletableFuture<Beat[]>();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int permits = weigh(audio);
+                try {
+                    memory.acquire(permits);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                final byte[] data;
+                try {
+                    data = readFully(audio);
+                } catch (Throwable t) {
+                    memory.release(permits);
+                    result.completeExceptionally(t);
+                    return;
+                }
+
+                try {
+                    cpuExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                CountingDecoder decoder = new CountingDecoder(
+                                        BeatDetector.createDecoder(new ByteArrayInputStream(data), type));
+                                Beat[] beats = BeatDetector.detectBeats(decoder, sensitivity);
+
+                                framesAnalyzed.addAndGet(decoder.frames);
+                                filesCompleted.incrementAndGet();
+                                result.complete(beats);
+                            } catch (Throwable t) {
+                                result.completeExceptionally(t);
+                            } finally {
+                                memory.release(permits);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    memory.release(permits);
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Queue several files for beat detection.
+     * @param audio Files of encoded audio data, all of the same type.
+     * @param type An AudioType indicating the format of the audio.
+     * @param sensitivity How sensitive the detector will be.
+     * @return One future per file, in the iteration order of the collection.
+     *         @see #submit(File, AudioType, DetectorSensitivity)
+     */
+    public List<CompletableFuture<Beat[]>> submitAll(Collection<File> audio, AudioType type, DetectorSensitivity sensitivity) {
+        List<CompletableFuture<Beat[]>> results = new ArrayList<CompletableFuture<Beat[]>>(audio.size());
+        for (File f : audio)
+            results.add(submit(f, type, sensitivity));
+        return results;
+    }
+
+    /**
+     * @return aggregate throughput since the first file was submitted
+     */
+    public Throughput getThroughput() {
+        long start = startNanos.get();
+        double elapsed = start < 0 ? 0 : (System.nanoTime() - start) / 1e9;
+        double audioSeconds = framesAnalyzed.get() * (SpectralFlux.FRAME_SIZE / 44100.0);
+        return new Throughput(filesCompleted.get(), audioSeconds, elapsed);
+    }
+
+    /**
+     * Stop accepting work. Files already submitted are still analyzed.
+     */
+    public void shutdown() {
+        if (ownsIoExecutor)
+            ((ExecutorService) ioExecutor).shutdown();
+        cpuExecutor.shutdown();
+    }
+
+    /**
+     * @return the number of memory permits a file needs, never more than the whole budget
+     */
+    private int weigh(File audio) {
+        long kb = (audio.length() + ANALYSIS_OVERHEAD + 1023) / 1024;
+        return (int) Math.min(memoryKb, kb);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("File too large: " + file);
+
+        byte[] data = new byte[(int) length];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * Aggregate throughput of a batch.
+     */
+    public static class Throughput {
+        /**
+         * number of files analyzed successfully
+         */
+        public final long files;
+        /**
+         * seconds of audio in those files
+         */
+        public final double audioSeconds;
+        /**
+         * wall clock seconds since the first file was submitted
+         */
+        public final double elapsedSeconds;
+
+        Throughput(long files, double audioSeconds, double elapsedSeconds) {
+            this.files = files;
+            this.audioSeconds = audioSeconds;
+            this.elapsedSeconds = elapsedSeconds;
+        }
+
+        /**
+         * @return files analyzed per wall clock second
+         */
+        public double filesPerSecond() {
+            return elapsedSeconds > 0 ? files / elapsedSeconds : 0;
+        }
+
+        /**
+         * @return seconds of audio analyzed per wall clock second
+         */
+        public double audioSecondsPerSecond() {
+            return elapsedSeconds > 0 ? audioSeconds / elapsedSeconds : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %.1f s of audio in %.1f s (%.2f files/s, %.1f audio-s/s)",
+                    files, audioSeconds, elapsedSeconds, filesPerSecond(), audioSecondsPerSecond());
+        }
+    }
+
+    /**
+     * Counts the frames that pass through a decoder.
+     */
+    private static class CountingDecoder implements Decoder {
+        private final Decoder decoder;
+        long frames;
+
+        CountingDecoder(Decoder decoder) {
+            this.decoder = decoder;
+        }
+
+        @Override
+        public short[] nextMonoFrame() throws IOException {
+            short[] frame = decoder.nextMonoFrame();
+            if (frame != null && frame.length == SpectralFlux.FRAME_SIZE)
+                frames++;
+            return frame;
+        }
+    }
+}
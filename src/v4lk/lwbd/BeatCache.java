@@ -0,0 +1,361 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.BeatDetector.AudioType;
+import v4lk.lwbd.BeatDetector.DetectorSensitivity;
+import v4lk.lwbd.util.Beat;
+import v4lk.lwbd.util.BeatTrack;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of analysis results that sits in front of BeatDetector.
+ *
+ * Entries are the flux envelopes of audio files, so one entry serves every detector
+ * sensitivity. They are keyed by a hash of the file's audio payload only: ID3 tags
+ * around MP3 data and the metadata blocks in front of FLAC data are left out, so
+ * retagging a file, or keeping several copies of it with different tags, doesn't
+ * cause it to be analyzed again.
+ *
+ * When the entries outgrow the size limit, the least recently used are removed. Every
+ * entry is written to a temporary file and then renamed into place, so any number of
+ * threads and processes can share one cache directory: a reader sees either a whole
+ * entry or none at all.
+ *
+ * @author Quentin Young
+ */
+public class BeatCache {
+
+    private static final String SUFFIX = ".lwfx";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * age after which a temporary file is assumed to have been left behind by a
+     * crashed writer
+     */
+    private static final long STALE_TEMP_MS = 60 * 60 * 1000;
+
+    private final File directory;
+    private final long maxBytes;
+    /**
+     * estimate of the bytes in the cache; checked against the directory itself
+     * whenever it exceeds maxBytes
+     */
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Open a cache, creating its directory if it doesn't exist.
+     * @param directory directory to keep entries in. May be shared with other BeatCaches,
+     *                  including ones in other processes.
+     * @param maxBytes size the entries are kept under
+     * @throws IOException if the directory can't be created
+     */
+    public BeatCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+            throw new IOException("Can't create cache directory " + directory);
+
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.size.set(directorySize());
+    }
+
+    /**
+     * Get the flux envelope of an audio file, analyzing the file only if the
+     * cache has no envelope for its audio.
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @return The audio's flux envelope.
+     * @throws IOException on read error.
+     */
+    public FluxEnvelope getFluxEnvelope(File audio, AudioType type) throws IOException {
+        String key = payloadKey(audio);
+        File entry = new File(directory, key + SUFFIX);
+
+        FluxEnvelope envelope = read(entry);
+        if (envelope != null) {
+            hits.incrementAndGet();
+            return envelope;
+        }
+
+        misses.incrementAndGet();
+        envelope = BeatDetector.calculateFluxEnvelope(audio, type);
+        write(entry, envelope);
+        return envelope;
+    }
+
+    /**
+     * Perform beat detection on the provided audio data, or look up the result if
+     * the same audio has been analyzed before.
+     *     @see v4lk.lwbd.BeatDetector#detectBeats(File, AudioType, DetectorSensitivity)
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @param sensitivity How sensitive the detector will be.
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public Beat[] detectBeats(File audio, AudioType type, DetectorSensitivity sensitivity) throws IOException {
+        return BeatDetector.detectBeats(getFluxEnvelope(audio, type), sensitivity);
+    }
+
+    /**
+     * Perform beat detection on the provided audio data, or look up the result if
+     * the same audio has been analyzed before.
+     *     @see v4lk.lwbd.BeatDetector#detectBeats(File, AudioType)
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public Beat[] detectBeats(File audio, AudioType type) throws IOException {
+        return detectBeats(audio, type, DetectorSensitivity.MIDDLING);
+    }
+
+    /**
+     * Perform beat detection on the provided audio data, or look up the result if
+     * the same audio has been analyzed before.
+     *     @see v4lk.lwbd.BeatDetector#detectBeatTrack(File, AudioType, DetectorSensitivity)
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @param sensitivity How sensitive the detector will be.
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public BeatTrack detectBeatTrack(File audio, AudioType type, DetectorSensitivity sensitivity) throws IOException {
+        return BeatDetector.detectBeatTrack(getFluxEnvelope(audio, type), sensitivity);
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that required analysis
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public synchronized void clear() {
+        // temporary files are left to the writers they belong to
+        for (File f : listEntries())
+            if (f.getName().endsWith(SUFFIX))
+                f.delete();
+        size.set(directorySize());
+    }
+
+    /**
+     * @return the entry's envelope, or null if there is no usable entry
+     */
+    private FluxEnvelope read(File entry) {
+        try {
+            FluxEnvelope envelope = FluxEnvelope.load(entry);
+            // mark the entry as recently used
+            entry.setLastModified(System.currentTimeMillis());
+            return envelope;
+        } catch (FileNotFoundException e) {
+            // not cached, or evicted by another process
+            return null;
+        } catch (IOException e) {
+            // unreadable; drop it so it gets rewritten
+            entry.delete();
+            return null;
+        }
+    }
+
+    private void write(File entry, FluxEnvelope envelope) throws IOException {
+        File temp = File.createTempFile(entry.getName(), TEMP_SUFFIX, directory);
+        try {
+            envelope.save(temp);
+            if (!temp.renameTo(entry)) {
+                // some platforms won't rename over an existing file. if another
+                // writer got there first its entry is just as good as this one
+                if (!entry.exists())
+                    throw new IOException("Can't move cache entry into place: " + entry);
+                temp.delete();
+                return;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        if (size.addAndGet(entry.length()) > maxBytes)
+            evict();
+    }
+
+    /**
+     * Remove least recently used entries until the cache is under its size limit.
+     */
+    private synchronized void evict() {
+        File[] files = listEntries();
+        long now = System.currentTimeMillis();
+        final long[] used = new long[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            used[i] = files[i].lastModified();
+            total += files[i].length();
+        }
+
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return used[a] < used[b] ? -1 : used[a] > used[b] ? 1 : 0;
+            }
+        });
+
+        for (Integer i : order) {
+            File f = files[i];
+            boolean staleTemp = f.getName().endsWith(TEMP_SUFFIX) && now - used[i] > STALE_TEMP_MS;
+            boolean entry = f.getName().endsWith(SUFFIX);
+            if (!staleTemp && !(entry && total > maxBytes))
+                continue;
+
+            long length = f.length();
+            if (f.delete())
+                total -= length;
+        }
+
+        size.set(total);
+    }
+
+    private File[] listEntries() {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SUFFIX) || name.endsWith(TEMP_SUFFIX);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    private long directorySize() {
+        long total = 0;
+        for (File f : listEntries())
+            total += f.length();
+        return total;
+    }
+
+    /**
+     * Hash the audio payload of a file. For MP3 files, any ID3v2 tags at the start and
+     * ID3v1 tag at the end are skipped; for FLAC files, the metadata blocks are skipped.
+     * @param audio the audio file
+     * @return hex string identifying the audio payload
+     * @throws IOException on read error
+     */
+    static String payloadKey(File audio) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(audio, "r");
+        try {
+            long length = file.length();
+            long start = payloadStart(file, length);
+            long end = length;
+
+            // ID3v1 tag: the last 128 bytes, starting with "TAG"
+            if (end - start >= 128) {
+                byte[] tag = new byte[3];
+                file.seek(end - 128);
+                file.readFully(tag);
+                if (tag[0] == 'T' && tag[1] == 'A' && tag[2] == 'G')
+                    end -= 128;
+            }
+
+            MessageDigest digest = md5();
+            byte[] buffer = new byte[64 * 1024];
+            file.seek(start);
+            for (long remaining = end - start; remaining > 0; ) {
+                int n = file.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0)
+                    break;
+                digest.update(buffer, 0, n);
+                remaining -= n;
+            }
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest())
+                key.append(String.format("%02x", b & 0xff));
+            return key.toString();
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the offset of the first byte after any leading tags or metadata
+     */
+    private static long payloadStart(RandomAccessFile file, long length) throws IOException {
+        byte[] header = new byte[10];
+        long start = 0;
+
+        // ID3v2 tags, possibly more than one
+        while (start + 10 <= length) {
+            file.seek(start);
+            file.readFully(header);
+            if (header[0] != 'I' || header[1] != 'D' || header[2] != '3')
+                break;
+            // tag size is a 28 bit syncsafe integer and excludes the header and footer
+            int size = ((header[6] & 0x7f) << 21) | ((header[7] & 0x7f) << 14)
+                    | ((header[8] & 0x7f) << 7) | (header[9] & 0x7f);
+            boolean footer = (header[5] & 0x10) != 0;
+            start += 10 + size + (footer ? 10 : 0);
+        }
+
+        // FLAC metadata blocks, each with a 4 byte header: a last-block flag, the
+        // block type, and a 24 bit length
+        if (start + 4 <= length) {
+            file.seek(start);
+            file.readFully(header, 0, 4);
+            if (header[0] == 'f' && header[1] == 'L' && header[2] == 'a' && header[3] == 'C') {
+                start += 4;
+                boolean last = false;
+                while (!last && start + 4 <= length) {
+                    file.seek(start);
+                    file.readFully(header, 0, 4);
+                    last = (header[0] & 0x80) != 0;
+                    start += 4 + (((header[1] & 0xff) << 16) | ((header[2] & 0xff) << 8) | (header[3] & 0xff));
+                }
+            }
+        }
+
+        return Math.min(start, length);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support MD5
+            throw new IllegalStateException(e);
+        }
+    }
+}
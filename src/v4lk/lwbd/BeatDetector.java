@@ -1,15 +1,18 @@
 package v4lk.lwbd;
 
 import v4lk.lwbd.decoders.Decoder;
+import v4lk.lwbd.decoders.JFlacDecoder;
 import v4lk.lwbd.decoders.JLayerMp3Decoder;
-import v4lk.lwbd.decoders.processing.fft.FFT;
+import v4lk.lwbd.decoders.SampleRateDecoder;
 import v4lk.lwbd.util.Beat;
+import v4lk.lwbd.util.BeatTrack;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * lwbd -- a portable lightweight beat detector
@@ -19,93 +22,220 @@ import java.util.LinkedList;
 public class BeatDetector {
 
     private static class AudioFunctions {
+        /**
+         * number of frames in each segment of parallel analysis, approx. 6 seconds
+         */
+        private static final int SEGMENT_FRAMES = 256;
+
         /**
          * Calculates the spectral flux value for each sequential pair of
-         * 1024-sample windows in a given audio file
+         * analysis frames in a given audio file
          *
-         * @return A list of all calculated spectral fluxes
+         * @return An array of all calculated spectral fluxes
          */
-        public static LinkedList<Float> calculateSpectralFluxes(Decoder decoder) throws IOException {
-
-            // some collections and objects we'll need
-            FFT transformer = new FFT(1024, 44100);
-            transformer.window(FFT.HAMMING);
-            float[] currentSpectrum, previousSpectrum;
-            LinkedList<Float> fluxes = new LinkedList<Float>();
-            int spectrumSize = (1024 / 2) + 1;
-            currentSpectrum = new float[spectrumSize];
-            previousSpectrum = new float[spectrumSize];
+        public static float[] calculateSpectralFluxes(Decoder decoder, AnalysisConfig config) throws IOException {
 
+            SpectralFlux spectralFlux = new SpectralFlux(config);
+            FrameAssembler assembler = new FrameAssembler(decoder, config);
+            // room for ~95 seconds of audio at the default hop; grown by doubling
+            float[] fluxes = new float[4096];
+            int count = 0;
+            float[] frame = new float[config.getFftSize()];
 
             // calculate spectral fluxes
-            short[] protoframe = decoder.nextMonoFrame();
-
-            while (protoframe != null && protoframe.length == 1024) {
-                // convert to float
-                float[] frame = new float[protoframe.length];
-                for (int i = 0; i < frame.length; i++)
-                    frame[i] = (float) protoframe[i] / 32768f;
-                // fft
-                transformer.forward(frame);
-                // array shuffle
-                System.arraycopy(currentSpectrum, 0, previousSpectrum, 0, currentSpectrum.length);
-                System.arraycopy(transformer.getSpectrum(), 0, currentSpectrum, 0, currentSpectrum.length);
-
-                // calculate the spectral flux between two spectra
-                float flux = 0;
-                for (int i = 0; i < currentSpectrum.length; i++) {
-                    float tFlux = (currentSpectrum[i] - previousSpectrum[i]);
-                    flux += tFlux > 0 ? tFlux : 0;
+            while (assembler.next(frame, 0)) {
+                if (count == fluxes.length)
+                    fluxes = Arrays.copyOf(fluxes, fluxes.length * 2);
+                fluxes[count++] = spectralFlux.next(frame);
+            }
+
+            return Arrays.copyOf(fluxes, count);
+        }
+        /**
+         * Calculates the spectral flux value for each sequential pair of
+         * analysis frames in a given audio file, using a pool of worker threads.
+         *
+         * Decoded audio is cut into segments of SEGMENT_FRAMES frames, and each segment is
+         * handed to the pool as soon as it has been decoded, so decoding and transforming
+         * overlap. A segment also carries the last frame of the segment before it, whose
+         * spectrum it computes first and throws away; the first flux of every segment is
+         * then computed from exactly the same two spectra as in the sequential version,
+         * which makes the result bit-identical to calculateSpectralFluxes(Decoder, AnalysisConfig).
+         *
+         * @return An array of all calculated spectral fluxes
+         */
+        public static float[] calculateSpectralFluxes(Decoder decoder, AnalysisConfig config, ForkJoinPool pool) throws IOException {
+
+            ArrayList<FluxSegment> segments = new ArrayList<FluxSegment>();
+            FrameAssembler assembler = new FrameAssembler(decoder, config);
+            int frameSize = config.getFftSize();
+            // frames are stored whole, so overlapping samples are stored once per frame
+            float[] block = new float[SEGMENT_FRAMES * frameSize];
+            float[] overlap = null;
+            int blockFrames = 0;
+
+            // decode and hand off segments
+            while (assembler.next(block, blockFrames * frameSize)) {
+                blockFrames++;
+
+                if (blockFrames == SEGMENT_FRAMES) {
+                    FluxSegment segment = new FluxSegment(config, overlap, block, blockFrames);
+                    pool.execute(segment);
+                    segments.add(segment);
+
+                    overlap = Arrays.copyOfRange(block, block.length - frameSize, block.length);
+                    block = new float[block.length];
+                    blockFrames = 0;
                 }
+            }
+            if (blockFrames > 0) {
+                FluxSegment segment = new FluxSegment(config, overlap, block, blockFrames);
+                pool.execute(segment);
+                segments.add(segment);
+            }
+
+            // stitch segments back together in order
+            float[] fluxes = new float[segments.size() * SEGMENT_FRAMES];
+            int count = 0;
+            for (FluxSegment segment : segments) {
+                segment.join();
+                System.arraycopy(segment.fluxes, 0, fluxes, count, segment.fluxes.length);
+                count += segment.fluxes.length;
+            }
+
+            return Arrays.copyOf(fluxes, count);
+        }
+        /**
+         * Calculates the spectral flux value for each sequential pair of analysis
+         * frames in each band of a filter bank, in a single pass over the audio.
+         *
+         * @return The fluxes of each band, one float[] per band
+         */
+        public static float[][] calculateBandFluxes(Decoder decoder, AnalysisConfig config, FilterBank bank) throws IOException {
+
+            SpectralFlux spectralFlux = new SpectralFlux(config, bank);
+            FrameAssembler assembler = new FrameAssembler(decoder, config);
+            int bands = bank.size();
+            float[][] fluxes = new float[bands][4096];
+            float[] bandFluxes = new float[bands];
+            int count = 0;
+            float[] frame = new float[config.getFftSize()];
 
-                fluxes.add(flux);
-                protoframe = decoder.nextMonoFrame();
+            while (assembler.next(frame, 0)) {
+                if (count == fluxes[0].length)
+                    for (int b = 0; b < bands; b++)
+                        fluxes[b] = Arrays.copyOf(fluxes[b], count * 2);
+                spectralFlux.next(frame, bandFluxes);
+                for (int b = 0; b < bands; b++)
+                    fluxes[b][count] = bandFluxes[b];
+                count++;
             }
 
+            for (int b = 0; b < bands; b++)
+                fluxes[b] = Arrays.copyOf(fluxes[b], count);
             return fluxes;
         }
         /**
-         * Performs onset detection on a set of spectral fluxes
+         * Computes the spectral fluxes of one segment of decoded audio.
+         */
+        private static class FluxSegment extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final AnalysisConfig config;
+            /**
+             * last frame of the previous segment, or null for the first segment
+             */
+            private float[] overlap;
+            private float[] samples;
+            final float[] fluxes;
+
+            FluxSegment(AnalysisConfig config, float[] overlap, float[] samples, int frames) {
+                this.config = config;
+                this.overlap = overlap;
+                this.samples = samples;
+                this.fluxes = new float[frames];
+            }
+
+            @Override
+            protected void compute() {
+                SpectralFlux spectralFlux = new SpectralFlux(config);
+                int frameSize = config.getFftSize();
+                float[] frame = new float[frameSize];
+
+                // warm up with the previous segment's last spectrum
+                if (overlap != null)
+                    spectralFlux.next(overlap, 0, frame);
+
+                for (int i = 0; i < fluxes.length; i++)
+                    fluxes[i] = spectralFlux.next(samples, i * frameSize, frame);
+
+                // let the audio be collected before the other segments finish
+                overlap = null;
+                samples = null;
+            }
+        }
+        /**
+         * Performs onset detection on a set of spectral fluxes. Runs in time linear
+         * in the number of fluxes.
 
          * @param sensitivity
          *            Sensitivity value for threshold function
-         * @return An ArrayList<Float> containing a representation of the audio
-         *         file. There are approx. 43 values for every 1 second of
-         *         audio. All values are zero except where there are beats;
-         *         those values are the original sample values. The higher the
-         *         value the stronger the beat.
+         * @param radius
+         *            Number of fluxes on each side of a flux its threshold is
+         *            calculated from
+         * @return A float[] containing a representation of the audio
+         *         file, one value per frame. All values are zero except where
+         *         there are beats; those values are the original sample values.
+         *         The higher the value the stronger the beat.
          */
-        public static LinkedList<Float> detectPeaks(LinkedList<Float> spectralFluxes, float sensitivity) {
-
-            ArrayList<Float> thresholds = new ArrayList<Float>();
-
-            // calculate an energy threshold for each flux using a moving window of size 10
-            for (int i = 0; i < spectralFluxes.size(); i++) {
-                int start = Math.max(0, i - 10);
-                int end = Math.min(spectralFluxes.size() - 1, i + 10);
-                float mean = 0;
-                for (int j = start; j <= end; j++)
-                    mean += spectralFluxes.get(j);
-                mean /= (end - start);
-                thresholds.add(mean * sensitivity);
-            }
+        public static float[] detectPeaks(float[] spectralFluxes, float sensitivity, int radius) {
+            return detectPeaks(spectralFluxes, new float[] { sensitivity }, radius)[0];
+        }
+        /**
+         * Performs onset detection on a set of spectral fluxes at several sensitivities
+         * at once. The moving average each threshold is based on doesn't depend on the
+         * sensitivity, so it is calculated once per flux and shared. Runs in time linear
+         * in the number of fluxes times the number of sensitivities.
+         *
+         * @param sensitivities
+         *            Sensitivity values for threshold function
+         * @param radius
+         *            Number of fluxes on each side of a flux its threshold is
+         *            calculated from
+         * @return One float[] of peaks per sensitivity, in the same order.
+         *         @see #detectPeaks(float[], float, int)
+         */
+        public static float[][] detectPeaks(float[] spectralFluxes, float[] sensitivities, int radius) {
 
-            // zero out non-beats and keep the beats
-            ArrayList<Float> prunedSpectralFluxes = new ArrayList<Float>();
-            for (int i = 0; i < thresholds.size(); i++) {
-                float flux = spectralFluxes.get(i);
-                float threshold = thresholds.get(i);
-                float value = flux >= threshold ? flux - threshold : 0;
-                prunedSpectralFluxes.add(value);
-            }
+            int n = spectralFluxes.length;
+            int k = sensitivities.length;
+            float[][] peaks = new float[k][Math.max(0, n - 1)];
+            float[] previousPruned = new float[k];
 
-            // condense millisecond-consecutive beats to a single beat
-            LinkedList<Float> peaks = new LinkedList<Float>();
-            for (int i = 0; i < prunedSpectralFluxes.size() - 1; i++) {
-                float flux = prunedSpectralFluxes.get(i);
-                float nextflux = prunedSpectralFluxes.get(i + 1);
-                float value = flux > nextflux ? flux : 0;
-                peaks.add(value);
+            // calculate an energy threshold for each flux using a moving window of the given radius.
+            // the window sum is kept in a double so the running additions and removals don't drift
+            double sum = 0;
+            int added = 0, removed = 0;
+            for (int i = 0; i < n; i++) {
+                int start = Math.max(0, i - radius);
+                int end = Math.min(n - 1, i + radius);
+                while (added <= end)
+                    sum += spectralFluxes[added++];
+                while (removed < start)
+                    sum -= spectralFluxes[removed++];
+                float mean = (float) (sum / (end - start));
+                float flux = spectralFluxes[i];
+
+                for (int j = 0; j < k; j++) {
+                    // zero out non-beats and keep the beats
+                    float threshold = mean * sensitivities[j];
+                    float pruned = flux >= threshold ? flux - threshold : 0;
+
+                    // condense millisecond-consecutive beats to a single beat
+                    if (i > 0)
+                        peaks[j][i - 1] = previousPruned[j] > pruned ? previousPruned[j] : 0;
+                    previousPruned[j] = pruned;
+                }
             }
 
             return peaks;
@@ -113,66 +243,48 @@ public class BeatDetector {
     }
     private static class ProcessingFunctions {
         /**
-         * Calculates a time-energy map from a list of peaks.
+         * Calculates a beat track from a list of peaks.
          * @param peaks an ordered list of peaks in an audio file.
-         * @return A time-energy map.
+         * @param secondsPerFrame length of the frame each peak stands for
+         * @return A track with one beat for each peak.
          */
-        public static LinkedHashMap<Long, Float> convertToTimeEnergyMap(LinkedList<Float> peaks) {
-            // Convert to time - energy map
-            LinkedHashMap<Long, Float> timeEnergyMap = new LinkedHashMap<Long, Float>();
-            for (int i = 0; i < peaks.size(); i++){
-                if (peaks.get(i) > 0) {
-                    long timeInMillis = (long) (((float) i * (1024f / 44100f)) * 1000f);
-                    timeEnergyMap.put(timeInMillis, peaks.get(i));
+        public static BeatTrack convertToBeatTrack(float[] peaks, float secondsPerFrame) {
+            int size = 0;
+            for (float peak : peaks)
+                if (peak > 0)
+                    size++;
+
+            // Convert to time - energy track
+            BeatTrack track = new BeatTrack(size);
+            for (int i = 0; i < peaks.length; i++){
+                if (peaks[i] > 0) {
+                    long timeInMillis = (long) (((float) i * secondsPerFrame) * 1000f);
+                    track.add(timeInMillis, peaks[i]);
                 }
             }
-            return timeEnergyMap;
+            return track;
         }
         /**
-         * Normalizes all values in this hash map to [0, 1]. Does not normalize
-         * keys.
-         * @param map the map to normalize. This map is not modified.
-         * @return The normalized map.
+         * Normalizes all peaks to [0, 1].
+         * @param peaks the peaks to normalize. Modified in place.
+         * @return The normalized peaks.
          */
-        public static LinkedHashMap<Long, Float> normalizeValues(final LinkedHashMap<Long, Float> map) {
-            // normalize values to range [0, 1]
-            LinkedHashMap<Long, Float> newMap = new LinkedHashMap<Long, Float>();
-
+        public static float[] normalizeValues(float[] peaks) {
             // find max value
             float max = 0;
-            for (Float f : map.values())
+            for (float f : peaks)
                 if (f > max)
                     max = f;
 
             // divide all values by max value
-            float value;
-            for (Long l : map.keySet()) {
-                value = map.get(l);
-                value /= max;
-                newMap.put(l, value);
-            }
+            for (int i = 0; i < peaks.length; i++)
+                peaks[i] /= max;
 
-            return newMap;
-        }
-        /**
-         * Converts a time energy map to a LinkedList of Beat objects. Convenience function.
-         * @param timeEnergyMap ordered time-energy map
-         * @return a LinkedList of Beat objects in the same ordering as the parameter map by key.
-         */
-        public static Beat[] convertToBeatArray(LinkedHashMap<Long, Float> timeEnergyMap) {
-            Iterator<Long> iterator = timeEnergyMap.keySet().iterator();
-
-            Beat[] beats = new Beat[timeEnergyMap.size()];
-            for(int i = 0; i < beats.length; i++) {
-                long time = iterator.next();
-                beats[i] = new Beat(time, timeEnergyMap.get(time));
-            }
-
-            return beats;
+            return peaks;
         }
     }
 
-    public static enum AudioType { MP3 }
+    public static enum AudioType { MP3, FLAC }
     public static enum DetectorSensitivity {
         HIGH (1.0f),
         MIDDLING (1.4f),
@@ -198,14 +310,111 @@ public class BeatDetector {
      * @throws IOException on read error.
      */
     public static Beat[] detectBeats(Decoder decoder, DetectorSensitivity sensitivity) throws IOException {
-        // do beat detection
-        LinkedList<Float> spectralFluxes = AudioFunctions.calculateSpectralFluxes(decoder);
-        LinkedList<Float> peaks = AudioFunctions.detectPeaks(spectralFluxes, sensitivity.value);
-        // do some data transformation
-        LinkedHashMap<Long, Float> timeEnergyMap = ProcessingFunctions.convertToTimeEnergyMap(peaks);
-        timeEnergyMap = ProcessingFunctions.normalizeValues(timeEnergyMap);
+        return detectBeatTrack(decoder, sensitivity).toBeatArray();
+    }
+    /**
+     * Perform beat detection on the provided audio data, cutting it into frames as set out by an
+     * AnalysisConfig. Beat times are multiples of the config's hop. This method will block until
+     * analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public static Beat[] detectBeats(Decoder decoder, DetectorSensitivity sensitivity, AnalysisConfig config) throws IOException {
+        return detectBeatTrack(decoder, sensitivity, config).toBeatArray();
+    }
+    /**
+     * Perform beat detection on the provided audio data, spreading the analysis over the threads
+     * of a ForkJoinPool. Audio is decoded on the calling thread and analyzed in segments of a few
+     * seconds by the pool as decoding continues. The result is identical to that of
+     * detectBeats(Decoder, DetectorSensitivity). This method will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param pool The pool to run analysis on, e.g. ForkJoinPool.commonPool().
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public static Beat[] detectBeats(Decoder decoder, DetectorSensitivity sensitivity, ForkJoinPool pool) throws IOException {
+        return detectBeatTrack(decoder, sensitivity, pool).toBeatArray();
+    }
+    /**
+     * Perform streaming beat detection on the provided audio data. Each beat is passed to the
+     * listener as soon as it is confirmed, roughly 255 ms of audio after it occurs, instead of
+     * after the whole input has been analyzed. This method returns once the decoder runs out of
+     * data. Beat energies are normalized against the strongest beat seen so far.
+     *     @see v4lk.lwbd.OnsetStream
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param listener Receives each Beat, in time order.
+     *
+     * @throws IOException on read error.
+     */
+    public static void detectBeats(Decoder decoder, DetectorSensitivity sensitivity, OnsetListener listener) throws IOException {
+        detectBeats(decoder, sensitivity, AnalysisConfig.DEFAULT, listener);
+    }
+    /**
+     * Perform streaming beat detection on the provided audio data, cutting it into frames as set
+     * out by an AnalysisConfig. Each beat is passed to the listener as soon as it is confirmed.
+     *     @see #detectBeats(Decoder, DetectorSensitivity, OnsetListener)
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     * @param listener Receives each Beat, in time order.
+     *
+     * @throws IOException on read error.
+     */
+    public static void detectBeats(Decoder decoder, DetectorSensitivity sensitivity, AnalysisConfig config, OnsetListener listener) throws IOException {
+        config = configFor(decoder, config);
+        OnsetStream stream = new OnsetStream(sensitivity, config, listener);
+        FrameAssembler assembler = new FrameAssembler(decoder, config);
+        float[] frame = new float[config.getFftSize()];
+
+        while (assembler.next(frame, 0))
+            stream.process(frame);
 
-        return ProcessingFunctions.convertToBeatArray(timeEnergyMap);
+        stream.finish();
+    }
+    /**
+     * Perform low-latency beat detection on the provided audio data. Each beat is passed to the
+     * listener once the given number of frames after it have been decoded, about 23 ms of audio
+     * per frame, so this suits decoders reading live input. This method returns once the decoder
+     * runs out of data. Beat energies are normalized against a running peak level.
+     *     @see v4lk.lwbd.LiveOnsetDetector
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param lookahead Number of frames after a beat to wait for before reporting it, 0 to
+     *                  LiveOnsetDetector.MAX_LOOKAHEAD.
+     * @param listener Receives each Beat, in time order.
+     *
+     * @throws IOException on read error.
+     */
+    public static void detectBeats(Decoder decoder, DetectorSensitivity sensitivity, int lookahead, OnsetListener listener) throws IOException {
+        new LiveOnsetDetector(sensitivity, configFor(decoder, AnalysisConfig.DEFAULT), lookahead, listener).process(decoder);
     }
     /**
      * Perform beat detection on the provided audio data. This method will block until analysis has
@@ -280,17 +489,7 @@ public class BeatDetector {
      * @throws IOException on read error.
      */
     public static Beat[] detectBeats(InputStream audio, AudioType type, DetectorSensitivity sensitivity) throws IOException{
-        Decoder decoder;
-
-        switch (type) {
-            case MP3:
-                decoder = new JLayerMp3Decoder(audio);
-                break;
-            default:
-                decoder = new JLayerMp3Decoder(audio);
-        }
-
-        return detectBeats(decoder, sensitivity);
+        return detectBeats(createDecoder(audio, type), sensitivity);
     }
     /**
      * Perform beat detection on the provided audio data. This method will block until analysis has
@@ -311,4 +510,553 @@ public class BeatDetector {
         return detectBeats(audio, type, DetectorSensitivity.MIDDLING);
     }
 
+    /**
+     * Perform beat detection on the provided audio data. This method will block until analysis has
+     * completed, which can take a while depending on the amount of audio to be analyzed and the
+     * capabilities of the hardware.
+     * Returns the same beats as detectBeats(), stored compactly in a BeatTrack.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(Decoder decoder, DetectorSensitivity sensitivity) throws IOException {
+        // do beat detection
+        return detectBeatTrack(calculateFluxEnvelope(decoder), sensitivity);
+    }
+    /**
+     * Perform beat detection on the provided audio data, cutting it into frames as set out by an
+     * AnalysisConfig. Beat times are multiples of the config's hop. This method will block until
+     * analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(Decoder decoder, DetectorSensitivity sensitivity, AnalysisConfig config) throws IOException {
+        return detectBeatTrack(calculateFluxEnvelope(decoder, config), sensitivity);
+    }
+    /**
+     * Perform beat detection on the provided audio data. This method will block until analysis has
+     * completed, which can take a while depending on the amount of audio to be analyzed and the
+     * capabilities of the hardware.
+     * Returns the same beats as detectBeats(), stored compactly in a BeatTrack.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(Decoder decoder) throws IOException {
+        return detectBeatTrack(decoder, DetectorSensitivity.MIDDLING);
+    }
+    /**
+     * Perform beat detection on the provided audio data. This method will block until analysis has
+     * completed, which can take a while depending on the amount of audio to be analyzed and the
+     * capabilities of the hardware.
+     * This overload will use this platform's default decoder for the provided audio type.
+     * Returns the same beats as detectBeats(), stored compactly in a BeatTrack.
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(File audio, AudioType type, DetectorSensitivity sensitivity) throws IOException {
+        return detectBeatTrack(new FileInputStream(audio), type, sensitivity);
+    }
+    /**
+     * Perform beat detection on the provided audio data. This method will block until analysis has
+     * completed, which can take a while depending on the amount of audio to be analyzed and the
+     * capabilities of the hardware.
+     * This overload will use this platform's default decoder for the provided audio type.
+     * Returns the same beats as detectBeats(), stored compactly in a BeatTrack.
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(File audio, AudioType type) throws IOException {
+        return detectBeatTrack(new FileInputStream(audio), type, DetectorSensitivity.MIDDLING);
+    }
+    /**
+     * Perform beat detection on the provided audio data. This method will block until analysis has
+     * completed, which can take a while depending on the amount of audio to be analyzed and the
+     * capabilities of the hardware.
+     * This overload will use this platform's default decoder for the provided audio type.
+     * Returns the same beats as detectBeats(), stored compactly in a BeatTrack.
+     *
+     * @param audio InputStream of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(InputStream audio, AudioType type, DetectorSensitivity sensitivity) throws IOException {
+        return detectBeatTrack(createDecoder(audio, type), sensitivity);
+    }
+    /**
+     * Perform beat detection on the provided audio data. This method will block until analysis has
+     * completed, which can take a while depending on the amount of audio to be analyzed and the
+     * capabilities of the hardware.
+     * This overload will use this platform's default decoder for the provided audio type.
+     * Returns the same beats as detectBeats(), stored compactly in a BeatTrack.
+     *
+     * @param audio InputStream of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws java.io.IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(InputStream audio, AudioType type) throws IOException {
+        return detectBeatTrack(audio, type, DetectorSensitivity.MIDDLING);
+    }
+
+    /**
+     * Perform beat detection on the provided audio data, spreading the analysis over the threads
+     * of a ForkJoinPool. Audio is decoded on the calling thread and analyzed in segments of a few
+     * seconds by the pool as decoding continues. The result is identical to that of
+     * detectBeatTrack(Decoder, DetectorSensitivity). This method will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param pool The pool to run analysis on, e.g. ForkJoinPool.commonPool().
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     *
+     * @throws IOException on read error.
+     */
+    public static BeatTrack detectBeatTrack(Decoder decoder, DetectorSensitivity sensitivity, ForkJoinPool pool) throws IOException {
+        return detectBeatTrack(calculateFluxEnvelope(decoder, pool), sensitivity);
+    }
+
+    /**
+     * Calculate the spectral flux envelope of the provided audio data: the expensive part of beat
+     * detection, and everything detectBeats() needs to pick beats at any sensitivity. This method
+     * will block until analysis has completed.
+     *     @see v4lk.lwbd.FluxEnvelope
+     *
+     * @param decoder A Decoder initialized with the audio data to analyze.
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(Decoder decoder) throws IOException {
+        return calculateFluxEnvelope(decoder, AnalysisConfig.DEFAULT);
+    }
+    /**
+     * Calculate the spectral flux envelope of the provided audio data, cutting it into frames as
+     * set out by an AnalysisConfig. This method will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to analyze.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(Decoder decoder, AnalysisConfig config) throws IOException {
+        config = configFor(decoder, config);
+        return new FluxEnvelope(AudioFunctions.calculateSpectralFluxes(decoder, config), config);
+    }
+    /**
+     * Calculate the spectral flux envelope of the provided audio data, spreading the analysis over
+     * the threads of a ForkJoinPool. The result is identical to that of calculateFluxEnvelope(Decoder).
+     * This method will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to analyze.
+     * @param pool The pool to run analysis on, e.g. ForkJoinPool.commonPool().
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(Decoder decoder, ForkJoinPool pool) throws IOException {
+        return calculateFluxEnvelope(decoder, AnalysisConfig.DEFAULT, pool);
+    }
+    /**
+     * Calculate the spectral flux envelope of the provided audio data, cutting it into frames as
+     * set out by an AnalysisConfig and spreading the analysis over the threads of a ForkJoinPool.
+     * The result is identical to that of calculateFluxEnvelope(Decoder, AnalysisConfig). This method
+     * will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to analyze.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     * @param pool The pool to run analysis on, e.g. ForkJoinPool.commonPool().
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(Decoder decoder, AnalysisConfig config, ForkJoinPool pool) throws IOException {
+        config = configFor(decoder, config);
+        return new FluxEnvelope(AudioFunctions.calculateSpectralFluxes(decoder, config, pool), config);
+    }
+    /**
+     * Calculate the spectral flux envelope of the provided audio data.
+     * This overload will use this platform's default decoder for the provided audio type.
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(File audio, AudioType type) throws IOException {
+        InputStream in = new FileInputStream(audio);
+        try {
+            return calculateFluxEnvelope(in, type);
+        } finally {
+            in.close();
+        }
+    }
+    /**
+     * Calculate the spectral flux envelope of the provided audio data, cutting it into frames as
+     * set out by an AnalysisConfig.
+     * This overload will use this platform's default decoder for the provided audio type.
+     *
+     * @param audio File of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(File audio, AudioType type, AnalysisConfig config) throws IOException {
+        InputStream in = new FileInputStream(audio);
+        try {
+            return calculateFluxEnvelope(createDecoder(in, type), config);
+        } finally {
+            in.close();
+        }
+    }
+    /**
+     * Calculate the spectral flux envelope of the provided audio data.
+     * This overload will use this platform's default decoder for the provided audio type.
+     *
+     * @param audio InputStream of encoded audio data corresponding to one of the types enumerated in AudioType.
+     * @param type An AudioType indicating the format of the audio.
+     *             @see v4lk.lwbd.BeatDetector.AudioType
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateFluxEnvelope(InputStream audio, AudioType type) throws IOException {
+        return calculateFluxEnvelope(createDecoder(audio, type));
+    }
+    /**
+     * Calculate the flux envelope of an MP3 stream in the compressed domain: from the MDCT
+     * coefficients of each layer III granule, or the subband samples of layer I and II frames,
+     * without synthesizing PCM or transforming it again. Several times faster than decoding, but
+     * the envelope is not the same as calculateFluxEnvelope() would give: its frames are 576
+     * samples apart, and the bands it measures are coarser. This method will block until
+     * analysis has completed.
+     *     @see v4lk.lwbd.Mp3SpectrumAnalyzer
+     *
+     * @param mp3 InputStream of MP3 data.
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateCompressedFluxEnvelope(InputStream mp3) throws IOException {
+        return new Mp3SpectrumAnalyzer().analyze(mp3);
+    }
+    /**
+     * Calculate the flux envelope of an MP3 file in the compressed domain.
+     *     @see #calculateCompressedFluxEnvelope(InputStream)
+     *
+     * @param mp3 MP3 file.
+     *
+     * @return The audio's flux envelope.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope calculateCompressedFluxEnvelope(File mp3) throws IOException {
+        InputStream in = new FileInputStream(mp3);
+        try {
+            return calculateCompressedFluxEnvelope(in);
+        } finally {
+            in.close();
+        }
+    }
+    /**
+     * Perform beat detection on an MP3 file in the compressed domain. This method will block
+     * until analysis has completed.
+     *     @see #calculateCompressedFluxEnvelope(InputStream)
+     *
+     * @param mp3 MP3 file.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public static Beat[] detectCompressedBeats(File mp3, DetectorSensitivity sensitivity) throws IOException {
+        return detectBeats(calculateCompressedFluxEnvelope(mp3), sensitivity);
+    }
+    /**
+     * Perform beat detection on an MP3 stream in the compressed domain. This method will block
+     * until analysis has completed.
+     *     @see #calculateCompressedFluxEnvelope(InputStream)
+     *
+     * @param mp3 InputStream of MP3 data.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public static Beat[] detectCompressedBeats(InputStream mp3, DetectorSensitivity sensitivity) throws IOException {
+        return detectBeats(calculateCompressedFluxEnvelope(mp3), sensitivity);
+    }
+
+    /**
+     * Perform beat detection separately in each band of a filter bank, so that e.g. a kick drum
+     * isn't drowned out by hi-hats playing at the same time. The audio is decoded and transformed
+     * once for all bands. This method will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param bank The bands to detect beats in.
+     *             @see v4lk.lwbd.FilterBank
+     *
+     * @return A time-ordered array of Beat objects, each tagged with the index of the band it was
+     *         detected in. Beats at the same time are ordered by band. Energies are normalized
+     *         within each band.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public static Beat[] detectBandBeats(Decoder decoder, DetectorSensitivity sensitivity, FilterBank bank) throws IOException {
+        return detectBandBeats(decoder, sensitivity, AnalysisConfig.DEFAULT, bank);
+    }
+    /**
+     * Perform beat detection separately in each band of a filter bank, cutting the audio into
+     * frames as set out by an AnalysisConfig.
+     *     @see #detectBandBeats(Decoder, DetectorSensitivity, FilterBank)
+     *
+     * @param decoder A Decoder initialized with the audio data to do beat detection on.
+     * @param sensitivity How sensitive the detector will be. High sensitivities will catch subtler beats
+     *                    but will increase false positives. Lower sensitivities will detect fewer beats
+     *                    but with greater accuracy.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     * @param bank The bands to detect beats in.
+     *             @see v4lk.lwbd.FilterBank
+     *
+     * @return A time-ordered array of Beat objects, each tagged with its band.
+     *         @see v4lk.lwbd.util.Beat
+     *
+     * @throws IOException on read error.
+     */
+    public static Beat[] detectBandBeats(Decoder decoder, DetectorSensitivity sensitivity, AnalysisConfig config, FilterBank bank) throws IOException {
+        return detectBandBeats(calculateBandFluxEnvelopes(decoder, config, bank), sensitivity);
+    }
+    /**
+     * Calculate the flux envelope of each band of a filter bank in a single pass over the audio.
+     * This method will block until analysis has completed.
+     *
+     * @param decoder A Decoder initialized with the audio data to analyze.
+     * @param config How the audio is cut into frames for analysis.
+     *               @see v4lk.lwbd.AnalysisConfig
+     * @param bank The bands to analyze.
+     *             @see v4lk.lwbd.FilterBank
+     *
+     * @return One flux envelope per band, in band order.
+     *
+     * @throws IOException on read error.
+     */
+    public static FluxEnvelope[] calculateBandFluxEnvelopes(Decoder decoder, AnalysisConfig config, FilterBank bank) throws IOException {
+        config = configFor(decoder, config);
+        float[][] fluxes = AudioFunctions.calculateBandFluxes(decoder, config, bank);
+        FluxEnvelope[] envelopes = new FluxEnvelope[bank.size()];
+        for (int b = 0; b < envelopes.length; b++)
+            envelopes[b] = new FluxEnvelope(fluxes[b], config);
+        return envelopes;
+    }
+    /**
+     * Pick beats out of the flux envelopes of the bands of a filter bank.
+     *
+     * @param bandEnvelopes The flux envelope of each band, in band order.
+     * @param sensitivity How sensitive the detector will be.
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     *
+     * @return A time-ordered array of Beat objects, each tagged with the index of its envelope.
+     *         Beats at the same time are ordered by band.
+     *         @see v4lk.lwbd.util.Beat
+     */
+    public static Beat[] detectBandBeats(FluxEnvelope[] bandEnvelopes, DetectorSensitivity sensitivity) {
+        int size = 0;
+        BeatTrack[] tracks = new BeatTrack[bandEnvelopes.length];
+        for (int b = 0; b < tracks.length; b++) {
+            tracks[b] = detectBeatTrack(bandEnvelopes[b], sensitivity);
+            size += tracks[b].size();
+        }
+
+        Beat[] beats = new Beat[size];
+        int count = 0;
+        for (int b = 0; b < tracks.length; b++)
+            for (int i = 0; i < tracks[b].size(); i++)
+                beats[count++] = new Beat(tracks[b].getTimeMs(i), tracks[b].getEnergy(i), b);
+
+        // the sort is stable, so beats at the same time stay in band order
+        Arrays.sort(beats, new Comparator<Beat>() {
+            @Override
+            public int compare(Beat a, Beat b) {
+                return a.timeMs < b.timeMs ? -1 : a.timeMs > b.timeMs ? 1 : 0;
+            }
+        });
+        return beats;
+    }
+
+    /**
+     * Pick beats out of a flux envelope. Gives the same beats as running detectBeats() on the
+     * audio the envelope was calculated from, without decoding it again.
+     *
+     * @param envelope The flux envelope of the audio.
+     * @param sensitivity How sensitive the detector will be.
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     *
+     * @return A time-ordered array of Beat objects.
+     *         @see v4lk.lwbd.util.Beat
+     */
+    public static Beat[] detectBeats(FluxEnvelope envelope, DetectorSensitivity sensitivity) {
+        return detectBeatTrack(envelope, sensitivity).toBeatArray();
+    }
+    /**
+     * Pick beats out of a flux envelope at several sensitivities in a single pass over the envelope.
+     *
+     * @param envelope The flux envelope of the audio.
+     * @param sensitivities The sensitivities to detect beats at.
+     *
+     * @return One time-ordered array of Beat objects per sensitivity, in the same order.
+     *         @see v4lk.lwbd.util.Beat
+     */
+    public static Beat[][] detectBeats(FluxEnvelope envelope, DetectorSensitivity[] sensitivities) {
+        BeatTrack[] tracks = detectBeatTracks(envelope, sensitivities);
+        Beat[][] beats = new Beat[tracks.length][];
+        for (int i = 0; i < tracks.length; i++)
+            beats[i] = tracks[i].toBeatArray();
+        return beats;
+    }
+    /**
+     * Pick beats out of a flux envelope. Gives the same beats as running detectBeatTrack() on the
+     * audio the envelope was calculated from, without decoding it again.
+     *
+     * @param envelope The flux envelope of the audio.
+     * @param sensitivity How sensitive the detector will be.
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     *
+     * @return A time-ordered BeatTrack.
+     *         @see v4lk.lwbd.util.BeatTrack
+     */
+    public static BeatTrack detectBeatTrack(FluxEnvelope envelope, DetectorSensitivity sensitivity) {
+        return detectBeatTracks(envelope, new DetectorSensitivity[] { sensitivity })[0];
+    }
+    /**
+     * Pick beats out of a flux envelope at several sensitivities in a single pass over the envelope.
+     *
+     * @param envelope The flux envelope of the audio.
+     * @param sensitivities The sensitivities to detect beats at.
+     *
+     * @return One time-ordered BeatTrack per sensitivity, in the same order.
+     *         @see v4lk.lwbd.util.BeatTrack
+     */
+    public static BeatTrack[] detectBeatTracks(FluxEnvelope envelope, DetectorSensitivity[] sensitivities) {
+        float[] values = new float[sensitivities.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = sensitivities[i].value;
+
+        int radius = AnalysisConfig.thresholdRadius(envelope.getHopSize(), envelope.getSampleRate());
+        float[][] peaks = AudioFunctions.detectPeaks(envelope.fluxes(), values, radius);
+        float secondsPerFrame = (float) envelope.getHopSize() / envelope.getSampleRate();
+
+        BeatTrack[] tracks = new BeatTrack[peaks.length];
+        for (int i = 0; i < peaks.length; i++) {
+            // do some data transformation
+            ProcessingFunctions.normalizeValues(peaks[i]);
+            tracks[i] = ProcessingFunctions.convertToBeatTrack(peaks[i], secondsPerFrame);
+        }
+        return tracks;
+    }
+    /**
+     * @return the equivalent of config for the sample rate of the decoder's output
+     */
+    static AnalysisConfig configFor(Decoder decoder, AnalysisConfig config) throws IOException {
+        if (decoder instanceof SampleRateDecoder)
+            return config.forSampleRate(((SampleRateDecoder) decoder).getSampleRate());
+        return config;
+    }
+    /**
+     * @return this platform's default decoder for the provided audio type
+     */
+    static Decoder createDecoder(InputStream audio, AudioType type) throws IOException {
+        switch (type) {
+            case MP3:
+                return new JLayerMp3Decoder(audio);
+            case FLAC:
+                return new JFlacDecoder(audio);
+            default:
+                return new JLayerMp3Decoder(audio);
+        }
+    }
+
 }
\ No newline at end of file
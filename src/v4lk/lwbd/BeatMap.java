@@ -0,0 +1,380 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.BeatDetector.DetectorSensitivity;
+import v4lk.lwbd.util.Beat;
+import v4lk.lwbd.util.BeatTrack;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A beat map file: the beats of one piece of audio in a compact binary format,
+ * read straight out of a memory-mapped file.
+ *
+ * The file starts with a fixed 32 byte header:
+ *
+ *   magic "LWBM", version (1 byte), sensitivity (1 byte, the DetectorSensitivity
+ *   ordinal or 255 if unknown), 2 reserved bytes, frame size, hop size, sample rate
+ *   (0 if unknown), number of beats, payload length and CRC-32 of the payload
+ *   (4 bytes each, big-endian)
+ *
+ * followed by the payload, which has two fields per beat: the milliseconds since the
+ * previous beat (since 0 for the first) as an unsigned LEB128 varint, and the energy
+ * quantized to one byte. Most beats take three bytes.
+ *
+ * Opening a map only reads its header, and iterating over it with a Cursor doesn't
+ * allocate, so a large library's maps can be opened up front and read as needed.
+ *
+ * @author Quentin Young
+ */
+public class BeatMap {
+
+    /**
+     * "LWBM"
+     */
+    private static final int MAGIC = 0x4c57424d;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    /**
+     * size of a version 1 header, which had no hop size
+     */
+    private static final int V1_HEADER_SIZE = 28;
+    private static final int UNKNOWN_SENSITIVITY = 255;
+    private static final float ENERGY_LEVELS = 255f;
+
+    private final ByteBuffer buffer;
+    private final int sensitivity;
+    private final int headerSize;
+    private final int frameSize;
+    private final int hopSize;
+    private final int sampleRate;
+    private final int count;
+    private final int payloadLength;
+    private final int checksum;
+
+    private BeatMap(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < V1_HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a beat map");
+        int version = buffer.get(4) & 0xff;
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported beat map version " + version);
+        this.headerSize = version >= 2 ? HEADER_SIZE : V1_HEADER_SIZE;
+        if (buffer.capacity() < headerSize)
+            throw new IOException("Truncated or corrupt beat map");
+
+        this.buffer = buffer;
+        this.sensitivity = buffer.get(5) & 0xff;
+        int field = 8;
+        this.frameSize = buffer.getInt(field);
+        field += 4;
+        // version 1 maps were all of frames that didn't overlap
+        if (version >= 2) {
+            this.hopSize = buffer.getInt(field);
+            field += 4;
+        } else {
+            this.hopSize = frameSize;
+        }
+        this.sampleRate = buffer.getInt(field);
+        this.count = buffer.getInt(field + 4);
+        this.payloadLength = buffer.getInt(field + 8);
+        this.checksum = buffer.getInt(field + 12);
+
+        if (count < 0 || payloadLength < 0 || (long) headerSize + payloadLength != buffer.capacity())
+            throw new IOException("Truncated or corrupt beat map");
+    }
+
+    /**
+     * Open a beat map file. Maps the file into memory and reads its header; the
+     * beats themselves are only read as they're iterated over.
+     * @param file beat map file
+     * @return the map
+     * @throws IOException on read error, or if the file is not a beat map
+     */
+    public static BeatMap open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BeatMap(mapped);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Read a beat map from a buffer holding the contents of a beat map file, e.g. one
+     * embedded in another file. The buffer is used as is, not copied.
+     * @param buffer buffer whose capacity is exactly one beat map
+     * @return the map
+     * @throws IOException if the buffer does not hold a beat map
+     */
+    public static BeatMap wrap(ByteBuffer buffer) throws IOException {
+        return new BeatMap(buffer);
+    }
+
+    /**
+     * @return the number of beats in this map
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the sensitivity the beats were detected at, or null if it wasn't recorded
+     */
+    public DetectorSensitivity getSensitivity() {
+        DetectorSensitivity[] values = DetectorSensitivity.values();
+        return sensitivity < values.length ? values[sensitivity] : null;
+    }
+
+    /**
+     * @return the number of samples in one analysis frame, or 0 if it wasn't recorded
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return the number of samples between the starts of consecutive analysis frames,
+     *         or 0 if it wasn't recorded
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * @return the sample rate of the analyzed audio, in Hz, or 0 if it wasn't recorded
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Check the payload against the checksum in the header. Reads the whole map.
+     * @return true if the payload is intact
+     */
+    public boolean verify() {
+        CRC32 crc = new CRC32();
+        for (int i = headerSize; i < headerSize + payloadLength; i++)
+            crc.update(buffer.get(i));
+        return (int) crc.getValue() == checksum;
+    }
+
+    /**
+     * @return a new cursor positioned before the first beat
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return a BeatTrack holding the beats of this map
+     */
+    public BeatTrack toBeatTrack() {
+        BeatTrack track = new BeatTrack(count);
+        Cursor cursor = cursor();
+        while (cursor.next())
+            track.add(cursor.getTimeMs(), cursor.getEnergy());
+        return track;
+    }
+
+    /**
+     * @return a new Beat[] holding the beats of this map
+     */
+    public Beat[] toBeatArray() {
+        return toBeatTrack().toBeatArray();
+    }
+
+    /**
+     * Reads the beats of a map in order. Reusable through reset(); reading beats
+     * doesn't allocate. Cursors don't change the map, so any number of them can read
+     * one map at once, each from its own thread.
+     */
+    public class Cursor {
+        private int position;
+        private int index;
+        private long timeMs;
+        private float energy;
+
+        private Cursor() {
+            reset();
+        }
+
+        /**
+         * Move back to before the first beat.
+         */
+        public void reset() {
+            position = headerSize;
+            index = -1;
+            timeMs = 0;
+            energy = 0;
+        }
+
+        /**
+         * Move to the next beat.
+         * @return false if there are no more beats
+         */
+        public boolean next() {
+            if (index + 1 >= count)
+                return false;
+
+            // time delta, 7 bits per byte, low bits first
+            long delta = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get(position++);
+                delta |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            timeMs += delta;
+            energy = (buffer.get(position++) & 0xff) / ENERGY_LEVELS;
+            index++;
+            return true;
+        }
+
+        /**
+         * @return the index of the current beat
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the millisecond the current beat occurs at
+         */
+        public long getTimeMs() {
+            return timeMs;
+        }
+
+        /**
+         * @return the energy of the current beat, to within 1/255
+         */
+        public float getEnergy() {
+            return energy;
+        }
+    }
+
+    /**
+     * Write beats as a beat map, without the analysis parameters.
+     * @param beats time-ordered beats, with energies in [0, 1]
+     * @param sensitivity the sensitivity the beats were detected at, or null if unknown
+     * @param out stream to write to. Not closed.
+     * @throws IOException on write error
+     */
+    public static void write(BeatTrack beats, DetectorSensitivity sensitivity, OutputStream out) throws IOException {
+        write(beats, sensitivity, null, out);
+    }
+
+    /**
+     * Write beats as a beat map.
+     * @param beats time-ordered beats, with energies in [0, 1]
+     * @param sensitivity the sensitivity the beats were detected at, or null if unknown
+     * @param envelope the envelope the beats were picked from, whose frame size, hop
+     *                 size and sample rate are recorded, or null if unknown
+     * @param out stream to write to. Not closed.
+     * @throws IOException on write error
+     */
+    public static void write(BeatTrack beats, DetectorSensitivity sensitivity, FluxEnvelope envelope, OutputStream out) throws IOException {
+        // encode the payload first, since its length and checksum go in the header
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(beats.size() * 3);
+        long previous = 0;
+        for (int i = 0; i < beats.size(); i++) {
+            long time = beats.getTimeMs(i);
+            if (time < previous)
+                throw new IllegalArgumentException("Beats are not in time order at index " + i);
+
+            long delta = time - previous;
+            while ((delta & ~0x7fL) != 0) {
+                payload.write((int) (delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            payload.write((int) delta);
+
+            float energy = Math.max(0, Math.min(1, beats.getEnergy(i)));
+            payload.write(Math.round(energy * ENERGY_LEVELS));
+            previous = time;
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] bytes = payload.toByteArray();
+        crc.update(bytes);
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(sensitivity != null ? sensitivity.ordinal() : UNKNOWN_SENSITIVITY);
+        data.writeShort(0);
+        data.writeInt(envelope != null ? envelope.getFrameSize() : 0);
+        data.writeInt(envelope != null ? envelope.getHopSize() : 0);
+        data.writeInt(envelope != null ? envelope.getSampleRate() : 0);
+        data.writeInt(beats.size());
+        data.writeInt(bytes.length);
+        data.writeInt((int) crc.getValue());
+        data.write(bytes);
+        data.flush();
+    }
+
+    /**
+     * Write beats to a beat map file, without the analysis parameters.
+     * @param beats time-ordered beats, with energies in [0, 1]
+     * @param sensitivity the sensitivity the beats were detected at, or null if unknown
+     * @param file file to write to. Replaced if it exists.
+     * @throws IOException on write error
+     */
+    public static void write(BeatTrack beats, DetectorSensitivity sensitivity, File file) throws IOException {
+        write(beats, sensitivity, null, file);
+    }
+
+    /**
+     * Write beats to a beat map file.
+     * @param beats time-ordered beats, with energies in [0, 1]
+     * @param sensitivity the sensitivity the beats were detected at, or null if unknown
+     * @param envelope the envelope the beats were picked from, whose frame size, hop
+     *                 size and sample rate are recorded, or null if unknown
+     * @param file file to write to. Replaced if it exists.
+     * @throws IOException on write error
+     */
+    public static void write(BeatTrack beats, DetectorSensitivity sensitivity, FluxEnvelope envelope, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(beats, sensitivity, envelope, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write beats to a beat map file, without the analysis parameters.
+     * @param beats time-ordered beats, with energies in [0, 1]
+     * @param sensitivity the sensitivity the beats were detected at, or null if unknown
+     * @param file file to write to. Replaced if it exists.
+     * @throws IOException on write error
+     */
+    public static void write(Beat[] beats, DetectorSensitivity sensitivity, File file) throws IOException {
+        write(BeatTrack.fromBeats(beats), sensitivity, null, file);
+    }
+
+    /**
+     * Write beats to a beat map file.
+     * @param beats time-ordered beats, with energies in [0, 1]
+     * @param sensitivity the sensitivity the beats were detected at, or null if unknown
+     * @param envelope the envelope the beats were picked from, whose frame size, hop
+     *                 size and sample rate are recorded, or null if unknown
+     * @param file file to write to. Replaced if it exists.
+     * @throws IOException on write error
+     */
+    public static void write(Beat[] beats, DetectorSensitivity sensitivity, FluxEnvelope envelope, File file) throws IOException {
+        write(BeatTrack.fromBeats(beats), sensitivity, envelope, file);
+    }
+
+    @Override
+    public String toString() {
+        return "BeatMap of " + count + " beats";
+    }
+}
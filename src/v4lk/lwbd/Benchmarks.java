@@ -0,0 +1,541 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.BeatDetector.DetectorSensitivity;
+import v4lk.lwbd.decoders.Decoder;
+import v4lk.lwbd.decoders.JFlacDecoder;
+import v4lk.lwbd.decoders.JLayerMp3Decoder;
+import v4lk.lwbd.decoders.processing.fft.FFT;
+import v4lk.lwbd.decoders.processing.jflac.LPCPredictor;
+import v4lk.lwbd.util.Beat;
+import v4lk.lwbd.util.BeatTrack;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Micro benchmarks for the decoding and analysis paths. Each benchmark runs a few
+ * warm-up iterations, then reports the best of several timed runs.
+ *
+ * Usage: java v4lk.lwbd.Benchmarks <benchmark> <args...>
+ *
+ *   downmix <file.mp3>    compares decoding both MP3 channels and averaging the PCM
+ *                         against mixing down to mono before synthesis
+ *   fft [size]            compares the real-input forward transform against a
+ *                         complex transform of the same samples, and the amplitude
+ *                         spectrum against the power spectrum
+ *   latency [file.mp3]    feeds audio to LiveOnsetDetector in 256 sample buffers, as an
+ *                         audio driver would, and reports the delay between each beat's
+ *                         frame arriving and the beat being reported at each lookahead.
+ *                         Uses a synthetic click track if no file is given.
+ *   rate <file.mp3>       compares detecting beats in MP3 audio decoded at the full, half
+ *                         and quarter sample rate
+ *   compressed <file.mp3> compares analyzing decoded PCM against analyzing the MP3's
+ *                         MDCT coefficients or subband samples in the compressed domain
+ *   decode <file.mp3>     times decoding an MP3 to PCM and prints a checksum of the
+ *                         samples, to compare decoder changes against each other
+ *   flac <file.flac>      times decoding a FLAC file to PCM and prints a checksum of the
+ *                         samples, likewise
+ *   parallel <file>       compares decoding a FLAC or MP3 file on one thread against
+ *                         decoding segments of it on 1, 2, 4... worker threads, up
+ *                         to the number of cores, and prints each checksum
+ *   lpc                   compares FLAC's LPC restore kernels against the plain loop
+ *                         over the coefficients, at 16 bits and with 64-bit sums
+ *
+ * @author Quentin Young
+ */
+public class Benchmarks {
+
+    private static final int WARMUP_RUNS = 10;
+    private static final int TIMED_RUNS = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            usage();
+            return;
+        }
+
+        if (args[0].equals("downmix") && args.length > 1)
+            downmix(new File(args[1]));
+        else if (args[0].equals("fft"))
+            fft(args.length > 1 ? Integer.parseInt(args[1]) : SpectralFlux.FRAME_SIZE);
+        else if (args[0].equals("latency"))
+            latency(args.length > 1 ? new File(args[1]) : null);
+        else if (args[0].equals("rate") && args.length > 1)
+            rate(new File(args[1]));
+        else if (args[0].equals("compressed") && args.length > 1)
+            compressed(new File(args[1]));
+        else if (args[0].equals("decode") && args.length > 1)
+            decode(new File(args[1]));
+        else if (args[0].equals("flac") && args.length > 1)
+            flac(new File(args[1]));
+        else if (args[0].equals("parallel") && args.length > 1)
+            parallel(new File(args[1]));
+        else if (args[0].equals("lpc"))
+            lpc();
+        else
+            usage();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java v4lk.lwbd.Benchmarks <benchmark> <args...>");
+        System.err.println("  downmix <file.mp3>");
+        System.err.println("  fft [size]");
+        System.err.println("  latency [file.mp3]");
+        System.err.println("  rate <file.mp3>");
+        System.err.println("  compressed <file.mp3>");
+        System.err.println("  decode <file.mp3>");
+        System.err.println("  flac <file.flac>");
+        System.err.println("  parallel <file.flac|file.mp3>");
+        System.err.println("  lpc");
+    }
+
+    /**
+     * Times MP3 decoding with and without the frequency-domain downmix, then checks
+     * that both decoders produce the same beats.
+     */
+    private static void downmix(File mp3) throws IOException {
+        final byte[] data = readFully(mp3);
+
+        long stereo = time(new Run() {
+            public void run() throws IOException {
+                drain(new JLayerMp3Decoder(new ByteArrayInputStream(data), false));
+            }
+        });
+        long mono = time(new Run() {
+            public void run() throws IOException {
+                drain(new JLayerMp3Decoder(new ByteArrayInputStream(data), true));
+            }
+        });
+
+        System.out.printf("decode, stereo then merge: %8.1f ms%n", stereo / 1e6);
+        System.out.printf("decode, downmix first:     %8.1f ms  (%.2fx)%n", mono / 1e6, (double) stereo / mono);
+
+        BeatTrack expected = BeatDetector.detectBeatTrack(
+                new JLayerMp3Decoder(new ByteArrayInputStream(data), false), DetectorSensitivity.MIDDLING);
+        BeatTrack actual = BeatDetector.detectBeatTrack(
+                new JLayerMp3Decoder(new ByteArrayInputStream(data), true), DetectorSensitivity.MIDDLING);
+        compare(expected, actual);
+    }
+
+    /**
+     * Times beat detection on an MP3 decoded at each quality, then compares the beats
+     * found at the reduced rates against those at the full rate.
+     */
+    private static void rate(File mp3) throws IOException {
+        final byte[] data = readFully(mp3);
+        int[] qualities = { JLayerMp3Decoder.HIGH_QUALITY, JLayerMp3Decoder.MEDIUM_QUALITY, JLayerMp3Decoder.LOW_QUALITY };
+
+        BeatTrack[] tracks = new BeatTrack[qualities.length];
+        long full = 0;
+        for (int i = 0; i < qualities.length; i++) {
+            final int quality = qualities[i];
+            long t = time(new Run() {
+                public void run() throws IOException {
+                    BeatDetector.detectBeatTrack(new JLayerMp3Decoder(new ByteArrayInputStream(data), quality),
+                            DetectorSensitivity.MIDDLING);
+                }
+            });
+            if (i == 0)
+                full = t;
+
+            JLayerMp3Decoder decoder = new JLayerMp3Decoder(new ByteArrayInputStream(data), quality);
+            System.out.printf("decode and detect at %5d Hz: %8.1f ms  (%.2fx)%n",
+                    decoder.getSampleRate(), t / 1e6, (double) full / t);
+            tracks[i] = BeatDetector.detectBeatTrack(decoder, DetectorSensitivity.MIDDLING);
+        }
+
+        for (int i = 1; i < tracks.length; i++)
+            compare(tracks[0], tracks[i]);
+    }
+
+    /**
+     * Times decoding an MP3 in stereo and mixed down to mono, and prints a checksum of
+     * each decoder's output. Decoding content with a lot of big_values spends most of
+     * its time in Huffman decoding.
+     */
+    private static void decode(File mp3) throws IOException {
+        final byte[] data = readFully(mp3);
+        boolean[] modes = { false, true };
+
+        for (final boolean downmix : modes) {
+            long t = time(new Run() {
+                public void run() throws IOException {
+                    drain(new JLayerMp3Decoder(new ByteArrayInputStream(data), downmix));
+                }
+            });
+
+            long checksum = 0;
+            Decoder decoder = new JLayerMp3Decoder(new ByteArrayInputStream(data), downmix);
+            short[] frame;
+            while ((frame = decoder.nextMonoFrame()) != null)
+                for (short sample : frame)
+                    checksum = checksum * 31 + sample;
+
+            System.out.printf("decode, %-7s %8.1f ms  checksum %016x%n",
+                    downmix ? "downmix" : "stereo", t / 1e6, checksum);
+        }
+    }
+
+    /**
+     * Times decoding a FLAC file and prints a checksum of the decoder's output. Most
+     * of the time goes to reading the Rice coded residuals.
+     */
+    private static void flac(File file) throws IOException {
+        final byte[] data = readFully(file);
+
+        long t = time(new Run() {
+            public void run() throws IOException {
+                drain(new JFlacDecoder(new ByteArrayInputStream(data)));
+            }
+        });
+
+        long checksum = 0;
+        Decoder decoder = new JFlacDecoder(new ByteArrayInputStream(data));
+        short[] frame;
+        while ((frame = decoder.nextMonoFrame()) != null)
+            for (short sample : frame)
+                checksum = checksum * 31 + sample;
+
+        System.out.printf("decode: %8.1f ms  checksum %016x%n", t / 1e6, checksum);
+    }
+
+    /**
+     * Times decoding a FLAC or MP3 file with the sequential decoder and with the
+     * parallel one. The checksums should all be the same.
+     */
+    private static void parallel(File file) throws IOException {
+        final byte[] data = readFully(file);
+        final boolean mp3 = file.getName().toLowerCase().endsWith(".mp3");
+
+        long t = time(new Run() {
+            public void run() throws IOException {
+                drain(open(data, mp3, null));
+            }
+        });
+        System.out.printf("sequential:  %8.1f ms  checksum %016x%n", t / 1e6, checksum(open(data, mp3, null)));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads *= 2) {
+            threads = Math.min(threads, cores);
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            long p = time(new Run() {
+                public void run() throws IOException {
+                    drain(open(data, mp3, pool));
+                }
+            });
+            long checksum = checksum(open(data, mp3, pool));
+            pool.shutdown();
+
+            System.out.printf("%2d threads:  %8.1f ms  checksum %016x  %.2fx%n",
+                    threads, p / 1e6, checksum, (double) t / p);
+            if (threads == cores)
+                break;
+        }
+    }
+
+    /**
+     * @param pool pool to decode on, or null to decode on this thread
+     */
+    private static Decoder open(byte[] data, boolean mp3, ForkJoinPool pool) throws IOException {
+        InputStream in = new ByteArrayInputStream(data);
+        if (mp3)
+            return pool == null ? new JLayerMp3Decoder(in) : new JLayerMp3Decoder(in, pool);
+        return pool == null ? new JFlacDecoder(in) : new JFlacDecoder(in, pool);
+    }
+
+    private static long checksum(Decoder decoder) throws IOException {
+        long checksum = 0;
+        short[] frame;
+        while ((frame = decoder.nextMonoFrame()) != null)
+            for (short sample : frame)
+                checksum = checksum * 31 + sample;
+        return checksum;
+    }
+
+    /**
+     * Times restoring ten seconds of 4096 sample blocks from their LPC residuals at
+     * each of several orders, with the order-specialized kernels and with a loop.
+     */
+    private static void lpc() throws IOException {
+        final int blockSize = 4096;
+        final int blocks = 10 * 44100 / blockSize + 1;
+        final int[] residual = new int[blockSize];
+        Random random = new Random(0);
+        for (int i = 0; i < blockSize; i++)
+            residual[i] = random.nextInt(512) - 256;
+
+        int[] orders = { 2, 4, 8, 12, 32 };
+        for (int w = 0; w < 2; w++) {
+            final boolean wide = w == 1;
+            for (final int order : orders) {
+                final int[] coefficients = new int[order];
+                for (int j = 0; j < order; j++)
+                    coefficients[j] = random.nextInt(1 << 12) - (1 << 11);
+                final int[] data = new int[blockSize];
+
+                long loop = time(new Run() {
+                    public void run() {
+                        for (int b = 0; b < blocks; b++)
+                            restoreLoop(residual, blockSize - order, coefficients, order, 12, data, order, wide);
+                    }
+                });
+                long kernel = time(new Run() {
+                    public void run() {
+                        for (int b = 0; b < blocks; b++)
+                            if (wide)
+                                LPCPredictor.restoreSignalWide(residual, blockSize - order, coefficients, order, 12, data, order);
+                            else
+                                LPCPredictor.restoreSignal(residual, blockSize - order, coefficients, order, 12, data, order);
+                    }
+                });
+
+                System.out.printf("order %2d%s loop: %7.2f ms  kernel: %7.2f ms  (%.2fx)%n",
+                        order, wide ? ", 64-bit" : ",  32-bit", loop / 1e6, kernel / 1e6, (double) loop / kernel);
+            }
+        }
+    }
+
+    private static void restoreLoop(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization,
+                                    int[] data, int startAt, boolean wide) {
+        for (int i = 0; i < dataLen; i++) {
+            if (wide) {
+                long sum = 0;
+                for (int j = 0; j < order; j++)
+                    sum += (long) qlpCoeff[j] * data[startAt + i - j - 1];
+                data[startAt + i] = residual[i] + (int) (sum >> lpQuantization);
+            } else {
+                int sum = 0;
+                for (int j = 0; j < order; j++)
+                    sum += qlpCoeff[j] * data[startAt + i - j - 1];
+                data[startAt + i] = residual[i] + (sum >> lpQuantization);
+            }
+        }
+    }
+
+    /**
+     * Times calculating an MP3's flux envelope from decoded PCM and in the compressed
+     * domain, then compares the beats found in each.
+     */
+    private static void compressed(File mp3) throws IOException {
+        final byte[] data = readFully(mp3);
+
+        long pcm = time(new Run() {
+            public void run() throws IOException {
+                BeatDetector.calculateFluxEnvelope(new JLayerMp3Decoder(new ByteArrayInputStream(data)));
+            }
+        });
+        long compressed = time(new Run() {
+            public void run() throws IOException {
+                BeatDetector.calculateCompressedFluxEnvelope(new ByteArrayInputStream(data));
+            }
+        });
+
+        System.out.printf("analyze decoded PCM:     %8.1f ms%n", pcm / 1e6);
+        System.out.printf("analyze compressed:      %8.1f ms  (%.2fx)%n", compressed / 1e6, (double) pcm / compressed);
+
+        BeatTrack expected = BeatDetector.detectBeatTrack(
+                new JLayerMp3Decoder(new ByteArrayInputStream(data)), DetectorSensitivity.MIDDLING);
+        BeatTrack actual = BeatDetector.detectBeatTrack(
+                BeatDetector.calculateCompressedFluxEnvelope(new ByteArrayInputStream(data)), DetectorSensitivity.MIDDLING);
+        compare(expected, actual);
+    }
+
+    /**
+     * Times forward transforms of ten seconds' worth of frames of noise.
+     */
+    private static void fft(int size) throws IOException {
+        final int frames = 10 * 44100 / size + 1;
+        final float[][] input = new float[frames][size];
+        Random random = new Random(0);
+        for (float[] frame : input)
+            for (int i = 0; i < size; i++)
+                frame[i] = (float) random.nextGaussian() * 0.1f;
+
+        final FFT transformer = new FFT(size, 44100);
+        transformer.window(FFT.HAMMING);
+        final float[] samples = new float[size];
+        final float[] zeros = new float[size];
+
+        long complex = time(new Run() {
+            public void run() {
+                for (float[] frame : input) {
+                    System.arraycopy(frame, 0, samples, 0, samples.length);
+                    transformer.forward(samples, zeros);
+                }
+            }
+        });
+        long real = time(new Run() {
+            public void run() {
+                for (float[] frame : input) {
+                    System.arraycopy(frame, 0, samples, 0, samples.length);
+                    transformer.forward(samples);
+                }
+            }
+        });
+        transformer.powerSpectrum(true);
+        long power = time(new Run() {
+            public void run() {
+                for (float[] frame : input) {
+                    System.arraycopy(frame, 0, samples, 0, samples.length);
+                    transformer.forward(samples);
+                }
+            }
+        });
+
+        System.out.printf("%d frames of %d samples%n", frames, size);
+        System.out.printf("complex transform:            %8.3f ms%n", complex / 1e6);
+        System.out.printf("real transform:               %8.3f ms  (%.2fx)%n", real / 1e6, (double) complex / real);
+        System.out.printf("real transform, power output: %8.3f ms  (%.2fx)%n", power / 1e6, (double) complex / power);
+    }
+
+    /**
+     * Times live detection at several lookaheads. A beat's delay is the audio that
+     * arrived after its frame was complete, plus the time spent in the write() call
+     * that reported it up to the callback; with samples arriving in real time, that
+     * is the delay between the frame's last sample arriving and the callback.
+     */
+    private static void latency(File mp3) throws IOException {
+        final int bufferSize = 256;
+        final float[] samples = mp3 != null ? decodeMono(mp3) : clickTrack(60);
+        final double msPerSample = 1000.0 / 44100;
+        final double msPerFrame = SpectralFlux.FRAME_SIZE * msPerSample;
+
+        System.out.printf("%.1f s of audio in %d sample buffers, %.1f ms per frame%n",
+                samples.length * msPerSample / 1000, bufferSize, msPerFrame);
+        System.out.println("lookahead  beats  audio delay  processing (mean / max)  total (mean / max)");
+
+        for (int lookahead : new int[]{0, 1, 2, 4, LiveOnsetDetector.MAX_LOOKAHEAD}) {
+            // the first pass warms up the JIT
+            for (int pass = 0; pass < 2; pass++) {
+                final long[] writeStart = new long[1];
+                final int[] received = new int[1];
+                final double[] stats = new double[5];
+
+                LiveOnsetDetector detector = new LiveOnsetDetector(DetectorSensitivity.MIDDLING, lookahead,
+                        new OnsetListener() {
+                            @Override
+                            public void onBeat(Beat beat) {
+                                double processing = (System.nanoTime() - writeStart[0]) / 1e6;
+                                long frame = Math.round(beat.timeMs / msPerFrame);
+                                double audio = (received[0] - (frame + 1) * SpectralFlux.FRAME_SIZE) * msPerSample;
+                                stats[0]++;
+                                stats[1] += audio;
+                                stats[2] += processing;
+                                stats[3] = Math.max(stats[3], processing);
+                                stats[4] = Math.max(stats[4], audio + processing);
+                            }
+                        });
+
+                for (int off = 0; off + bufferSize <= samples.length; off += bufferSize) {
+                    received[0] = off + bufferSize;
+                    writeStart[0] = System.nanoTime();
+                    detector.write(samples, off, bufferSize);
+                }
+
+                if (pass == 1 && stats[0] > 0) {
+                    double beats = stats[0];
+                    System.out.printf("%9d  %5d  %8.1f ms  %8.3f / %6.3f ms      %6.1f / %6.1f ms%n",
+                            lookahead, (int) beats, stats[1] / beats, stats[2] / beats, stats[3],
+                            (stats[1] + stats[2]) / beats, stats[4]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return seconds of noise bursts, two a second, over quiet noise
+     */
+    private static float[] clickTrack(int seconds) {
+        float[] samples = new float[seconds * 44100];
+        Random random = new Random(0);
+        for (int i = 0; i < samples.length; i++) {
+            int sinceClick = i % 22050;
+            float level = 0.01f + 0.5f * (float) Math.exp(-sinceClick / 400.0);
+            samples[i] = (float) random.nextGaussian() * level;
+        }
+        return samples;
+    }
+
+    private static float[] decodeMono(File mp3) throws IOException {
+        FileInputStream in = new FileInputStream(mp3);
+        try {
+            JLayerMp3Decoder decoder = new JLayerMp3Decoder(new BufferedInputStream(in));
+            float[] samples = new float[1 << 20];
+            int length = 0;
+            int n;
+            while ((n = decoder.readMono(samples, length, samples.length - length)) >= 0) {
+                length += n;
+                if (length == samples.length)
+                    samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+            return Arrays.copyOf(samples, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Prints how closely two tracks of the same audio agree. A beat matches if the
+     * other track has a beat within one frame of it.
+     */
+    private static void compare(BeatTrack expected, BeatTrack actual) {
+        long tolerance = (long) Math.ceil(1000.0 * SpectralFlux.FRAME_SIZE / 44100.0);
+        int matched = 0;
+        float maxEnergyDifference = 0;
+
+        int j = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            long t = expected.getTimeMs(i);
+            while (j < actual.size() && actual.getTimeMs(j) < t - tolerance)
+                j++;
+            if (j < actual.size() && actual.getTimeMs(j) <= t + tolerance) {
+                matched++;
+                maxEnergyDifference = Math.max(maxEnergyDifference,
+                        Math.abs(expected.getEnergy(i) - actual.getEnergy(j)));
+                j++;
+            }
+        }
+
+        System.out.printf("beats: %d vs %d, %d matched within %d ms (%.1f%%), max energy difference %.4f%n",
+                expected.size(), actual.size(), matched, tolerance,
+                expected.size() > 0 ? 100.0 * matched / expected.size() : 100.0, maxEnergyDifference);
+    }
+
+    private interface Run {
+        void run() throws IOException;
+    }
+
+    /**
+     * @return the fastest of TIMED_RUNS runs, in nanoseconds
+     */
+    private static long time(Run run) throws IOException {
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            run.run();
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static void drain(Decoder decoder) throws IOException {
+        while (decoder.nextMonoFrame() != null)
+            ;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -5,10 +5,16 @@ import v4lk.lwbd.BeatDetector.DetectorSensitivity;
 import v4lk.lwbd.decoders.Decoder;
 import v4lk.lwbd.decoders.JLayerMp3Decoder;
 import v4lk.lwbd.util.Beat;
+import v4lk.lwbd.util.BeatIndex;
+import v4lk.lwbd.util.BeatTrack;
+import v4lk.lwbd.util.BeatsProcessor;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Usage examples
@@ -43,6 +49,111 @@ public class Examples {
             Decoder decoder = new JLayerMp3Decoder(stream);
             Beat[] beats = BeatDetector.detectBeats(decoder, DetectorSensitivity.LOW);
         }
+
+        // Detect beats from an MP3 file into a compact BeatTrack and post-process it in place
+        {
+            File audioFile = new File("/path/to/audiofile.mp3");
+            BeatTrack track = BeatDetector.detectBeatTrack(audioFile, AudioType.MP3);
+            BeatsProcessor.thinBeats(track, 250);
+            BeatsProcessor.filterByEnergy(track, 0.1f, 1.1f);
+            Beat[] beats = track.toBeatArray();
+        }
+
+        // Trade analysis time for timing precision: overlapping frames 256 samples (about 6 ms) apart
+        // for tight sync, or 2048 sample frames for a quick scan
+        {
+            AnalysisConfig precise = new AnalysisConfig(1024, 256, AnalysisConfig.Window.HAMMING);
+            Decoder decoder = new JLayerMp3Decoder(new FileInputStream("/path/to/audiofile.mp3"));
+            Beat[] beats = BeatDetector.detectBeats(decoder, DetectorSensitivity.MIDDLING, precise);
+
+            AnalysisConfig fast = new AnalysisConfig(2048, 2048, AnalysisConfig.Window.HANN);
+            FluxEnvelope envelope = BeatDetector.calculateFluxEnvelope(new File("/path/to/audiofile.mp3"), AudioType.MP3, fast);
+        }
+
+        // Detect beats separately in 8 mel-spaced frequency bands, so kick drums and hi-hats are told apart
+        {
+            Decoder decoder = new JLayerMp3Decoder(new FileInputStream("/path/to/audiofile.mp3"));
+            FilterBank bands = FilterBank.mel(8, 40, 16000);
+            for (Beat beat : BeatDetector.detectBandBeats(decoder, DetectorSensitivity.MIDDLING, bands))
+                if (beat.band == 0)
+                    System.out.println("bass beat: " + beat);
+        }
+
+        // Decode an MP3 file at a quarter of its sample rate, keeping everything below about 5 kHz, to save decoding
+        // and analysis time. Frames still span the same lengths of time.
+        {
+            Decoder decoder = new JLayerMp3Decoder(new FileInputStream("/path/to/audiofile.mp3"), JLayerMp3Decoder.LOW_QUALITY);
+            Beat[] beats = BeatDetector.detectBeats(decoder, DetectorSensitivity.MIDDLING);
+        }
+
+        // Detect beats in an MP3 file straight from its compressed frequency-domain data, without decoding it to PCM
+        {
+            Beat[] beats = BeatDetector.detectCompressedBeats(new File("/path/to/audiofile.mp3"), DetectorSensitivity.MIDDLING);
+        }
+
+        // Detect beats in many MP3 files at once, at most 4 at a time and within 64 MB of memory
+        {
+            List<File> library = Arrays.asList(new File("/path/to/a.mp3"), new File("/path/to/b.mp3"));
+            BatchBeatDetector batch = new BatchBeatDetector(4, 64 * 1024 * 1024);
+            List<CompletableFuture<Beat[]>> results = batch.submitAll(library, AudioType.MP3, DetectorSensitivity.MIDDLING);
+            for (CompletableFuture<Beat[]> result : results)
+                result.join();
+            System.out.println(batch.getThroughput());
+            batch.shutdown();
+        }
+
+        // Receive beats from an MP3 file as they are detected, instead of all at once at the end
+        {
+            File audioFile = new File("/path/to/audiofile.mp3");
+            FileInputStream stream = new FileInputStream(audioFile);
+            Decoder decoder = new JLayerMp3Decoder(stream);
+            BeatDetector.detectBeats(decoder, DetectorSensitivity.MIDDLING, new OnsetListener() {
+                @Override
+                public void onBeat(Beat beat) {
+                    System.out.println(beat);
+                }
+            });
+        }
+
+        // Analyze an MP3 file once, keep the result on disk, and detect beats at every sensitivity from it
+        {
+            File audioFile = new File("/path/to/audiofile.mp3");
+            FluxEnvelope envelope = BeatDetector.calculateFluxEnvelope(audioFile, AudioType.MP3);
+            envelope.save(new File("/path/to/audiofile.lwfx"));
+
+            FluxEnvelope saved = FluxEnvelope.load(new File("/path/to/audiofile.lwfx"));
+            Beat[][] beats = BeatDetector.detectBeats(saved, DetectorSensitivity.values());
+        }
+
+        // Keep up to 32 MB of analysis results on disk, so files already analyzed aren't decoded again
+        {
+            BeatCache cache = new BeatCache(new File("/path/to/cache"), 32 * 1024 * 1024);
+            Beat[] beats = cache.detectBeats(new File("/path/to/audiofile.mp3"), AudioType.MP3);
+        }
+
+        // Store beats in a compact beat map file, and read them back without building Beat objects
+        {
+            FluxEnvelope envelope = BeatDetector.calculateFluxEnvelope(new File("/path/to/audiofile.mp3"), AudioType.MP3);
+            BeatTrack beats = BeatDetector.detectBeatTrack(envelope, DetectorSensitivity.MIDDLING);
+            BeatMap.write(beats, DetectorSensitivity.MIDDLING, envelope, new File("/path/to/audiofile.lwbm"));
+
+            BeatMap map = BeatMap.open(new File("/path/to/audiofile.lwbm"));
+            BeatMap.Cursor cursor = map.cursor();
+            while (cursor.next())
+                System.out.println(cursor.getTimeMs() + " ms: " + cursor.getEnergy());
+        }
+
+        // Look up beats by play position, e.g. once per frame in a game
+        {
+            Beat[] beats = BeatDetector.detectBeats(new File("/path/to/audiofile.mp3"), AudioType.MP3);
+            BeatIndex index = new BeatIndex(beats);
+            BeatIndex strong = index.filterByEnergy(0.5f, 1.1f);
+            BeatIndex.Cursor cursor = strong.cursor();
+            for (long playMs = 0; playMs < 10000; playMs += 16) {
+                long nextStrongBeat = cursor.nextBeatAfter(playMs);
+                int beatsOnScreen = index.countInRange(playMs, playMs + 2000);
+            }
+        }
     }
 
 }
\ No newline at end of file
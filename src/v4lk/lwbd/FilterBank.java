@@ -0,0 +1,189 @@
+package v4lk.lwbd;
+
+/**
+ * A set of overlapping triangular frequency bands for multi-band beat detection.
+ * Each band rises from the center of the band below it to its own center, then falls
+ * to the center of the band above, so together they cover the range evenly.
+ *
+ * Bands can be spaced logarithmically, a constant number per octave, or on the mel
+ * scale, which is close to linear below 1 kHz and logarithmic above. Either way the
+ * low bands are narrow enough to separate a kick drum from the hi-hats above it.
+ *     @see v4lk.lwbd.BeatDetector#detectBandBeats(v4lk.lwbd.decoders.Decoder, v4lk.lwbd.BeatDetector.DetectorSensitivity, FilterBank)
+ *
+ * @author Quentin Young
+ */
+public class FilterBank {
+
+    /**
+     * band edges in Hz: band b rises from edges[b] to edges[b + 1] and falls to edges[b + 2]
+     */
+    private final float[] edges;
+
+    private FilterBank(float[] edges) {
+        this.edges = edges;
+    }
+
+    /**
+     * Create bands whose centers are spaced evenly on a logarithmic scale.
+     * @param bands number of bands
+     * @param minFrequency lower edge of the lowest band, in Hz
+     * @param maxFrequency upper edge of the highest band, in Hz
+     * @return the filter bank
+     */
+    public static FilterBank logarithmic(int bands, float minFrequency, float maxFrequency) {
+        checkRange(bands, minFrequency, maxFrequency);
+        float[] edges = new float[bands + 2];
+        double ratio = Math.log(maxFrequency / minFrequency) / (bands + 1);
+        for (int i = 0; i < edges.length; i++)
+            edges[i] = (float) (minFrequency * Math.exp(ratio * i));
+        return new FilterBank(edges);
+    }
+
+    /**
+     * Create bands whose centers are spaced evenly on the mel scale.
+     * @param bands number of bands
+     * @param minFrequency lower edge of the lowest band, in Hz
+     * @param maxFrequency upper edge of the highest band, in Hz
+     * @return the filter bank
+     */
+    public static FilterBank mel(int bands, float minFrequency, float maxFrequency) {
+        checkRange(bands, minFrequency, maxFrequency);
+        float[] edges = new float[bands + 2];
+        double minMel = toMel(minFrequency);
+        double step = (toMel(maxFrequency) - minMel) / (bands + 1);
+        for (int i = 0; i < edges.length; i++)
+            edges[i] = (float) fromMel(minMel + step * i);
+        return new FilterBank(edges);
+    }
+
+    private static void checkRange(int bands, float minFrequency, float maxFrequency) {
+        if (bands < 1)
+            throw new IllegalArgumentException("A filter bank needs at least one band");
+        if (minFrequency <= 0 || maxFrequency <= minFrequency)
+            throw new IllegalArgumentException("Invalid frequency range " + minFrequency + " - " + maxFrequency + " Hz");
+    }
+
+    private static double toMel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+
+    private static double fromMel(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+
+    /**
+     * @return the number of bands
+     */
+    public int size() {
+        return edges.length - 2;
+    }
+
+    /**
+     * @param band index of a band, 0 being the lowest
+     * @return the frequency the band is centered on, in Hz
+     */
+    public float getCenterFrequency(int band) {
+        return edges[band + 1];
+    }
+
+    /**
+     * @param band index of a band, 0 being the lowest
+     * @return the lowest frequency in the band, in Hz
+     */
+    public float getLowFrequency(int band) {
+        return edges[band];
+    }
+
+    /**
+     * @param band index of a band, 0 being the lowest
+     * @return the highest frequency in the band, in Hz
+     */
+    public float getHighFrequency(int band) {
+        return edges[band + 2];
+    }
+
+    /**
+     * Work out the weight of every spectrum bin in every band for one transform size.
+     * @param fftSize number of samples per transform
+     * @param sampleRate sample rate of the audio, in Hz
+     * @return the bands' weights
+     */
+    Weights weights(int fftSize, int sampleRate) {
+        int bands = size();
+        int bins = fftSize / 2 + 1;
+        float binWidth = (float) sampleRate / fftSize;
+
+        int[] first = new int[bands];
+        int[] offsets = new int[bands + 1];
+        float[][] bandWeights = new float[bands][];
+        for (int b = 0; b < bands; b++) {
+            float low = edges[b], center = edges[b + 1], high = edges[b + 2];
+            int start = Math.min(bins - 1, (int) Math.ceil(low / binWidth));
+            int end = Math.min(bins - 1, (int) Math.floor(high / binWidth));
+
+            if (end < start) {
+                // narrower than a bin; take the nearest one
+                start = end = Math.min(bins - 1, Math.round(center / binWidth));
+                bandWeights[b] = new float[] { 1 };
+            } else {
+                bandWeights[b] = new float[end - start + 1];
+                for (int k = start; k <= end; k++) {
+                    float f = k * binWidth;
+                    // bins outside the band, where it was clamped to the top bin because
+                    // it reaches above Nyquist, get no weight rather than a negative one
+                    bandWeights[b][k - start] = Math.max(0, f <= center
+                            ? (f - low) / (center - low)
+                            : (high - f) / (high - center));
+                }
+            }
+            first[b] = start;
+            offsets[b + 1] = offsets[b] + bandWeights[b].length;
+        }
+
+        float[] weights = new float[offsets[bands]];
+        for (int b = 0; b < bands; b++)
+            System.arraycopy(bandWeights[b], 0, weights, offsets[b], bandWeights[b].length);
+        return new Weights(first, offsets, weights);
+    }
+
+    /**
+     * The bands of a filter bank as a sparse matrix of bin weights. Each band only
+     * covers a contiguous run of bins, so only those weights are stored, back to back.
+     */
+    static class Weights {
+        /**
+         * index of the first bin in each band
+         */
+        private final int[] first;
+        /**
+         * index in weights of each band's first weight, plus the total number of weights
+         */
+        private final int[] offsets;
+        private final float[] weights;
+
+        private Weights(int[] first, int[] offsets, float[] weights) {
+            this.first = first;
+            this.offsets = offsets;
+            this.weights = weights;
+        }
+
+        int size() {
+            return first.length;
+        }
+
+        /**
+         * Weigh a spectrum into bands.
+         * @param spectrum value of each bin
+         * @param bands receives each band's weighted sum of bin values
+         */
+        void apply(float[] spectrum, float[] bands) {
+            for (int b = 0; b < first.length; b++) {
+                float sum = 0;
+                int bin = first[b];
+                for (int w = offsets[b]; w < offsets[b + 1]; w++)
+                    sum += weights[w] * spectrum[bin++];
+                bands[b] = sum;
+            }
+        }
+    }
+}
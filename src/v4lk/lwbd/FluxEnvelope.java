@@ -0,0 +1,195 @@
+package v4lk.lwbd;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The spectral flux of every frame of a piece of audio: everything beat detection
+ * needs from the audio itself. Decoding and transforming the audio is by far the most
+ * expensive part of beat detection, while picking beats out of an envelope takes well
+ * under a millisecond, so an envelope can be kept (in memory, or on disk with
+ * writeTo() and readFrom()) and thresholded again at any sensitivity without going
+ * back to the audio.
+ *     @see v4lk.lwbd.BeatDetector#calculateFluxEnvelope(v4lk.lwbd.decoders.Decoder)
+ *     @see v4lk.lwbd.BeatDetector#detectBeats(FluxEnvelope, v4lk.lwbd.BeatDetector.DetectorSensitivity)
+ *
+ * @author Quentin Young
+ */
+public class FluxEnvelope {
+
+    /**
+     * "LWFX"
+     */
+    private static final int MAGIC = 0x4c574658;
+    private static final int VERSION = 2;
+
+    private final float[] fluxes;
+    private final int frameSize;
+    private final int hopSize;
+    private final int sampleRate;
+
+    /**
+     * @param fluxes spectral flux of each frame. Not copied.
+     * @param config the config the frames were cut by
+     */
+    FluxEnvelope(float[] fluxes, AnalysisConfig config) {
+        this(fluxes, config.getFftSize(), config.getHopSize(), config.getSampleRate());
+    }
+
+    /**
+     * @param fluxes spectral flux of each frame. Not copied.
+     * @param frameSize number of samples in one frame
+     * @param hopSize number of samples between the starts of consecutive frames
+     * @param sampleRate sample rate of the analyzed audio, in Hz
+     */
+    FluxEnvelope(float[] fluxes, int frameSize, int hopSize, int sampleRate) {
+        this.fluxes = fluxes;
+        this.frameSize = frameSize;
+        this.hopSize = hopSize;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @return the number of frames in this envelope
+     */
+    public int size() {
+        return fluxes.length;
+    }
+
+    /**
+     * @param frame index of a frame
+     * @return the spectral flux between that frame and the one before it
+     */
+    public float getFlux(int frame) {
+        return fluxes[frame];
+    }
+
+    /**
+     * @return the number of samples in one frame
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return the number of samples between the starts of consecutive frames
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * @return the sample rate of the analyzed audio, in Hz
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the length of the analyzed audio, in milliseconds
+     */
+    public long getDurationMs() {
+        return (long) fluxes.length * hopSize * 1000 / sampleRate;
+    }
+
+    /**
+     * @return the fluxes themselves, for analysis inside the library. Not a copy.
+     */
+    float[] fluxes() {
+        return fluxes;
+    }
+
+    /**
+     * Write this envelope to a stream in a compact binary format: a short header
+     * followed by four bytes per frame. Does not close the stream.
+     * @param out stream to write to
+     * @throws IOException on write error
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeInt(frameSize);
+        data.writeInt(hopSize);
+        data.writeInt(sampleRate);
+        data.writeInt(fluxes.length);
+        for (float flux : fluxes)
+            data.writeFloat(flux);
+        data.flush();
+    }
+
+    /**
+     * Read an envelope written by writeTo(). Reads no further than the end of the
+     * envelope, so it may be followed by other data. Does not close the stream.
+     * @param in stream to read from
+     * @return the envelope
+     * @throws IOException on read error, or if the stream does not hold an envelope
+     */
+    public static FluxEnvelope readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a flux envelope");
+        int version = data.readUnsignedByte();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported flux envelope version " + version);
+
+        int frameSize = data.readInt();
+        // version 1 envelopes were all of frames that didn't overlap
+        int hopSize = version >= 2 ? data.readInt() : frameSize;
+        int sampleRate = data.readInt();
+        int count = data.readInt();
+        if (frameSize <= 0 || hopSize <= 0 || sampleRate <= 0 || count < 0)
+            throw new IOException("Corrupt flux envelope header");
+
+        // read in chunks so a corrupt count can't force a huge allocation up front,
+        // and so an unbuffered stream isn't read four bytes at a time
+        float[] fluxes = new float[Math.min(count, 1 << 16)];
+        byte[] chunk = new byte[4 * Math.min(count, 1 << 14)];
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, chunk.length / 4);
+            data.readFully(chunk, 0, 4 * n);
+            if (i + n > fluxes.length)
+                fluxes = Arrays.copyOf(fluxes, (int) Math.min(count, Math.max(i + n, 2L * fluxes.length)));
+            ByteBuffer.wrap(chunk, 0, 4 * n).asFloatBuffer().get(fluxes, i, n);
+            i += n;
+        }
+
+        return new FluxEnvelope(fluxes, frameSize, hopSize, sampleRate);
+    }
+
+    /**
+     * Write this envelope to a file.
+     *     @see #writeTo(OutputStream)
+     * @param file file to write to. Replaced if it exists.
+     * @throws IOException on write error
+     */
+    public void save(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read an envelope from a file written by save().
+     * @param file file to read from
+     * @return the envelope
+     * @throws IOException on read error, or if the file does not hold an envelope
+     */
+    public static FluxEnvelope load(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            return readFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FluxEnvelope of " + fluxes.length + " frames";
+    }
+}
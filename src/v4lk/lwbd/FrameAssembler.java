@@ -0,0 +1,79 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.decoders.Decoder;
+
+import java.io.IOException;
+
+/**
+ * Cuts the audio from a Decoder into analysis frames as set out by an AnalysisConfig.
+ * When frames overlap, only the hop's worth of new samples is read for each frame and
+ * the rest are shifted over from the previous frame; when they're further apart than
+ * a frame the samples in between are skipped. The same buffers are used for every
+ * frame.
+ *
+ * @author Quentin Young
+ */
+class FrameAssembler {
+
+    private final FrameReader reader;
+    private final int frameSize;
+    private final int hopSize;
+    /**
+     * the most recent frame, kept when frames overlap
+     */
+    private final float[] frame;
+    /**
+     * receives the skipped samples when frames don't overlap
+     */
+    private final float[] gap;
+    private boolean started;
+
+    FrameAssembler(Decoder decoder, AnalysisConfig config) {
+        this.reader = new FrameReader(decoder);
+        this.frameSize = config.getFftSize();
+        this.hopSize = config.getHopSize();
+        this.frame = hopSize < frameSize ? new float[frameSize] : null;
+        this.gap = hopSize > frameSize ? new float[Math.min(hopSize - frameSize, 4096)] : null;
+    }
+
+    /**
+     * Read the next frame. A partial frame at the end of the audio is discarded.
+     * @param dst buffer to write the frame to
+     * @param off index in dst of the frame's first sample
+     * @return true if a whole frame was read, false at the end of the audio
+     * @throws IOException on read error
+     */
+    boolean next(float[] dst, int off) throws IOException {
+        boolean first = !started;
+        started = true;
+
+        if (frame == null) {
+            // frames don't overlap; read straight into dst
+            if (!first && !skip(hopSize - frameSize))
+                return false;
+            return reader.read(dst, off, frameSize);
+        }
+
+        if (first) {
+            if (!reader.read(frame, 0, frameSize))
+                return false;
+        } else {
+            int kept = frameSize - hopSize;
+            System.arraycopy(frame, hopSize, frame, 0, kept);
+            if (!reader.read(frame, kept, hopSize))
+                return false;
+        }
+        System.arraycopy(frame, 0, dst, off, frameSize);
+        return true;
+    }
+
+    private boolean skip(int samples) throws IOException {
+        while (samples > 0) {
+            int n = Math.min(samples, gap.length);
+            if (!reader.read(gap, 0, n))
+                return false;
+            samples -= n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.decoders.Decoder;
+import v4lk.lwbd.decoders.FloatDecoder;
+
+import java.io.IOException;
+
+/**
+ * Reads normalized samples from a Decoder into caller-owned buffers, any number at
+ * a time. Decoders that implement FloatDecoder write straight into the buffer;
+ * others have their short[] frames converted.
+ *
+ * @author Quentin Young
+ */
+class FrameReader {
+
+    /**
+     * number of samples in each frame a Decoder returns
+     */
+    private static final int DECODER_FRAME_SIZE = 1024;
+
+    private final Decoder decoder;
+    private final FloatDecoder floatDecoder;
+    /**
+     * the decoder's current frame, and the index of its first unread sample
+     */
+    private short[] protoframe;
+    private int position;
+
+    FrameReader(Decoder decoder) {
+        this.decoder = decoder;
+        this.floatDecoder = decoder instanceof FloatDecoder ? (FloatDecoder) decoder : null;
+    }
+
+    /**
+     * Read the next samples. A partial read at the end of the audio is discarded.
+     * @param dst buffer to write the samples to
+     * @param off index in dst of the first sample
+     * @param len number of samples to read
+     * @return true if all len samples were read, false at the end of the audio
+     * @throws IOException on read error
+     */
+    boolean read(float[] dst, int off, int len) throws IOException {
+        if (floatDecoder != null) {
+            int filled = 0;
+            while (filled < len) {
+                int n = floatDecoder.readMono(dst, off + filled, len - filled);
+                if (n < 0)
+                    return false;
+                filled += n;
+            }
+            return true;
+        }
+
+        int filled = 0;
+        while (filled < len) {
+            if (protoframe == null || position == protoframe.length) {
+                protoframe = decoder.nextMonoFrame();
+                position = 0;
+                // a short frame is the end of the audio
+                if (protoframe == null || protoframe.length != DECODER_FRAME_SIZE) {
+                    protoframe = null;
+                    return false;
+                }
+            }
+
+            // convert to float
+            int n = Math.min(len - filled, protoframe.length - position);
+            for (int i = 0; i < n; i++)
+                dst[off + filled + i] = (float) protoframe[position + i] / 32768f;
+            position += n;
+            filled += n;
+        }
+        return true;
+    }
+}
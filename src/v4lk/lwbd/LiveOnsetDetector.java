@@ -0,0 +1,300 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.BeatDetector.DetectorSensitivity;
+import v4lk.lwbd.decoders.Decoder;
+import v4lk.lwbd.util.Beat;
+
+import java.io.IOException;
+
+/**
+ * Low-latency beat detector for live audio, such as a line-in feed. Push samples into
+ * it as they arrive, in buffers of any length, and it reports each beat to an
+ * OnsetListener from inside the write() call that completes it.
+ *
+ * BeatDetector and OnsetStream threshold each frame against the mean flux of the ten
+ * frames on either side of it, so every beat is confirmed more than 250 ms after it
+ * occurs. This detector only looks a configurable number of frames ahead, 0 to 10:
+ *
+ *   - a frame's threshold is the mean flux of the frames in the threshold radius
+ *     before it (ten with the default config), the frame itself and its lookahead
+ *     frames, times the sensitivity.
+ *   - with no lookahead, a frame is a beat if its flux rises above its threshold,
+ *     i.e. the previous frame's was not above its own. The beat is reported as soon
+ *     as the frame is complete.
+ *   - with a lookahead of n, a frame is a beat if its flux is above its threshold, at
+ *     least that of the frame before it, and greater than that of each of the n frames
+ *     after it. The beat is reported once the n-th of those frames is complete.
+ *
+ * Frames start one hop apart, 1024 samples or about 23 ms at 44.1 kHz with the
+ * default config, so the delay between a beat's frame being complete and the beat
+ * being reported is one hop per lookahead frame plus the time taken to transform the
+ * frames. More lookahead costs latency but reports each beat once at its peak rather
+ * than on the way up. A smaller hop shortens both the delay and the frames' spacing.
+ *
+ * Beat energies are normalized against a running peak level that decays with a half
+ * life of ten seconds, rather than against the loudest beat of the whole track, so
+ * they follow the level of the input as it changes.
+ *
+ * @author Quentin Young
+ */
+public class LiveOnsetDetector {
+
+    /**
+     * largest supported lookahead
+     */
+    public static final int MAX_LOOKAHEAD = 10;
+    /**
+     * half life of the running peak level, in seconds
+     */
+    private static final double PEAK_HALF_LIFE = 10.0;
+
+    private final SpectralFlux spectralFlux;
+    /**
+     * number of frames before a frame used to calculate its threshold
+     */
+    private final int radius;
+    private final int hopSize;
+    private final float secondsPerFrame;
+    /**
+     * per-frame decay of the running peak level
+     */
+    private final float peakDecay;
+    private final float sensitivity;
+    private final int lookahead;
+    private final OnsetListener listener;
+    /**
+     * samples of the frame being filled
+     */
+    private final float[] frame;
+    private final float[] scratch;
+    private int filled;
+    /**
+     * number of samples to drop before filling the next frame, when frames are
+     * further apart than they are long
+     */
+    private int skip;
+    /**
+     * the last radius + MAX_LOOKAHEAD + 2 fluxes, indexed by frame number modulo
+     * length: the threshold window of the frame being decided, plus the flux leaving
+     * the window and the flux of the frame before
+     */
+    private final float[] history;
+    /**
+     * number of frames received so far
+     */
+    private int frames;
+    /**
+     * number of frames decided so far
+     */
+    private int decided;
+    /**
+     * running sum of the fluxes from frame removed to the newest frame
+     */
+    private double sum;
+    private int removed;
+    private float previousPruned;
+    private float peak;
+    private boolean finished;
+
+    /**
+     * Initialize a detector
+     * @param sensitivity detector sensitivity
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     * @param lookahead number of frames after a frame to wait for before deciding whether
+     *                  it is a beat, 0 to MAX_LOOKAHEAD
+     * @param listener receives every detected beat
+     */
+    public LiveOnsetDetector(DetectorSensitivity sensitivity, int lookahead, OnsetListener listener) {
+        this(sensitivity, AnalysisConfig.DEFAULT, lookahead, listener);
+    }
+
+    /**
+     * Initialize a detector
+     * @param sensitivity detector sensitivity
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     * @param config how the audio is cut into frames
+     * @param lookahead number of frames after a frame to wait for before deciding whether
+     *                  it is a beat, 0 to MAX_LOOKAHEAD
+     * @param listener receives every detected beat
+     */
+    public LiveOnsetDetector(DetectorSensitivity sensitivity, AnalysisConfig config, int lookahead, OnsetListener listener) {
+        if (lookahead < 0 || lookahead > MAX_LOOKAHEAD)
+            throw new IllegalArgumentException("Lookahead must be between 0 and " + MAX_LOOKAHEAD + " frames");
+
+        this.spectralFlux = new SpectralFlux(config);
+        this.radius = config.getThresholdRadius();
+        this.hopSize = config.getHopSize();
+        this.secondsPerFrame = (float) hopSize / config.getSampleRate();
+        this.peakDecay = (float) Math.pow(0.5, secondsPerFrame / PEAK_HALF_LIFE);
+        this.sensitivity = sensitivity.value;
+        this.lookahead = lookahead;
+        this.listener = listener;
+        this.frame = new float[config.getFftSize()];
+        this.scratch = new float[config.getFftSize()];
+        this.history = new float[radius + MAX_LOOKAHEAD + 2];
+    }
+
+    /**
+     * Process the next samples of audio.
+     * @param samples mono PCM samples normalized to [-1, 1). Not modified.
+     * @param offset index of the first sample to process
+     * @param length number of samples to process
+     */
+    public void write(float[] samples, int offset, int length) {
+        checkOpen();
+        while (length > 0) {
+            if (skip > 0) {
+                int n = Math.min(length, skip);
+                skip -= n;
+                offset += n;
+                length -= n;
+                continue;
+            }
+
+            int n = Math.min(length, frame.length - filled);
+            System.arraycopy(samples, offset, frame, filled, n);
+            filled += n;
+            offset += n;
+            length -= n;
+
+            if (filled == frame.length)
+                completeFrame();
+        }
+    }
+
+    /**
+     * Process the next samples of audio.
+     * @param samples non-normalized mono PCM samples
+     * @param offset index of the first sample to process
+     * @param length number of samples to process
+     */
+    public void write(short[] samples, int offset, int length) {
+        checkOpen();
+        for (int i = offset; i < offset + length; i++) {
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            frame[filled++] = (float) samples[i] / 32768f;
+            if (filled == frame.length)
+                completeFrame();
+        }
+    }
+
+    /**
+     * Analyze the frame just filled and make room for the next one.
+     */
+    private void completeFrame() {
+        add(spectralFlux.next(frame, 0, scratch));
+
+        if (hopSize < frame.length) {
+            // keep the part of this frame the next one overlaps
+            filled = frame.length - hopSize;
+            System.arraycopy(frame, hopSize, frame, 0, filled);
+        } else {
+            filled = 0;
+            skip = hopSize - frame.length;
+        }
+    }
+
+    /**
+     * Process every frame a decoder produces, then finish(). Returns once the decoder
+     * runs out of data, so with a decoder reading a live source this runs for as long
+     * as the source does.
+     * @param decoder decoder to read from
+     * @throws IOException on read error
+     */
+    public void process(Decoder decoder) throws IOException {
+        FrameReader reader = new FrameReader(decoder);
+        float[] buffer = new float[hopSize];
+        while (reader.read(buffer, 0, buffer.length))
+            write(buffer, 0, buffer.length);
+        finish();
+    }
+
+    /**
+     * Signal the end of the audio. Decides the frames still waiting on their
+     * lookahead with what lookahead there is. A partial frame is discarded.
+     */
+    public void finish() {
+        if (finished)
+            return;
+        finished = true;
+
+        while (decided < frames)
+            decide(decided, frames - 1);
+    }
+
+    /**
+     * @return the number of frames after a beat's frame that are received before the
+     *         beat is reported
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * @return the time between a beat's frame being complete and the beat being
+     *         reported, in milliseconds of audio, not counting processing time
+     */
+    public float getDelayMs() {
+        return lookahead * secondsPerFrame * 1000f;
+    }
+
+    /**
+     * @return the number of whole frames processed so far
+     */
+    public int getFrameCount() {
+        return frames;
+    }
+
+    private void checkOpen() {
+        if (finished)
+            throw new IllegalStateException("Detector already finished");
+    }
+
+    private void add(float flux) {
+        history[frames % history.length] = flux;
+        sum += flux;
+        frames++;
+
+        // the newest frame completes the lookahead of the frame lookahead frames back
+        if (frames > lookahead)
+            decide(frames - 1 - lookahead, frames - 1);
+    }
+
+    /**
+     * Applies the threshold to frame i and reports it if it's a beat.
+     * @param i frame to decide
+     * @param last newest frame, the last of i's lookahead that has been received
+     */
+    private void decide(int i, int last) {
+        int start = Math.max(0, i - radius);
+        while (removed < start)
+            sum -= history[removed++ % history.length];
+        float mean = (float) (sum / (last - start + 1));
+        float threshold = mean * sensitivity;
+
+        float flux = history[i % history.length];
+        float pruned = flux >= threshold ? flux - threshold : 0;
+
+        peak = Math.max(pruned, peak * peakDecay);
+
+        boolean beat;
+        if (lookahead == 0) {
+            beat = pruned > 0 && previousPruned == 0;
+        } else {
+            beat = pruned > 0 && (i == 0 || flux >= history[(i - 1) % history.length]);
+            for (int j = i + 1; beat && j <= last; j++)
+                beat = flux > history[j % history.length];
+        }
+
+        if (beat) {
+            long timeInMillis = (long) (((float) i * secondsPerFrame) * 1000f);
+            listener.onBeat(new Beat(timeInMillis, pruned / peak));
+        }
+
+        previousPruned = pruned;
+        decided = i + 1;
+    }
+}
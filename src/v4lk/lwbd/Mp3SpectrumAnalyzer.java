@@ -0,0 +1,141 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.decoders.processing.jlayer.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Calculates the flux envelope of an MP3 stream in the compressed domain, from the
+ * frequency-domain data the decoder has before synthesis, instead of from decoded PCM.
+ * Nothing goes through the IMDCT, the polyphase filterbank or our own FFT.
+ *
+ * Each frame of the envelope covers 576 samples: one layer III granule, or 18 time
+ * slots of layer I and II subband samples. A frame's flux is the rise in amplitude
+ * from the frame before, summed over its bands:
+ *
+ *   - layer III bands are three MDCT coefficients wide, about 115 Hz at 44.1 kHz. In
+ *     short blocks that's one coefficient from each of the three windows, so long and
+ *     short blocks give the same bands.
+ *   - layer I and II bands are the 32 subbands, about 690 Hz wide at 44.1 kHz.
+ *
+ * Stereo layer III streams are mixed down to mono right after stereo processing, as
+ * JLayerMp3Decoder does; for layer I and II the energies of both channels are added.
+ *
+ * @author Quentin Young
+ */
+class Mp3SpectrumAnalyzer implements SpectrumListener {
+
+    /**
+     * number of samples each frame covers
+     */
+    static final int GRANULE_SIZE = 576;
+    /**
+     * number of layer I and II time slots in a frame
+     */
+    private static final int SLOTS_PER_GRANULE = GRANULE_SIZE / 32;
+    /**
+     * number of layer III coefficients in each band
+     */
+    private static final int LINES_PER_BAND = 3;
+    private static final int MAX_BANDS = GRANULE_SIZE / LINES_PER_BAND;
+    /**
+     * The IMDCT isn't normalized, so a short block's coefficients carry three times
+     * the energy of a long block's for the same signal.
+     */
+    private static final float SHORT_BLOCK_SCALE = 1f / 3f;
+
+    /**
+     * energy of each band in the frame being filled, and amplitude of each band in
+     * the frame before
+     */
+    private final float[] energies = new float[MAX_BANDS];
+    private final float[] previous = new float[MAX_BANDS];
+    // room for ~100 seconds of audio at 44.1 kHz; grown by doubling
+    private float[] fluxes = new float[8192];
+    private int frames;
+    /**
+     * number of channels in the current layer I or II frame, and of time slots in
+     * the frame being filled
+     */
+    private int channels;
+    private int slots;
+
+    /**
+     * Analyze every frame of a stream.
+     * @param stream binary MP3 input stream
+     * @return the stream's flux envelope
+     * @throws IOException on read or decoder error
+     */
+    FluxEnvelope analyze(InputStream stream) throws IOException {
+        Bitstream bitstream = new Bitstream(stream);
+        Decoder.Params params = Decoder.getDefaultParams();
+        params.setOutputChannels(OutputChannels.DOWNMIX);
+        Decoder decoder = new Decoder(params);
+        decoder.setSpectrumListener(this);
+
+        int sampleRate = 44100;
+        boolean first = true;
+        while (true) {
+            try {
+                Header h = bitstream.readFrame();
+                if (h == null) // EoF
+                    break;
+                if (first) {
+                    sampleRate = h.frequency();
+                    first = false;
+                }
+                channels = h.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+                decoder.decodeFrame(h, bitstream);
+            } catch (DecoderException e) { throw new IOException("Decoder error", e);
+            } catch (BitstreamException e) { throw new IOException("Decoder error", e);
+            } finally {
+                bitstream.closeFrame();
+            }
+        }
+
+        return new FluxEnvelope(Arrays.copyOf(fluxes, frames), GRANULE_SIZE, GRANULE_SIZE, sampleRate);
+    }
+
+    @Override
+    public void granule(int channel, float[] coefficients, int longLines) {
+        for (int b = 0; b < MAX_BANDS; b++) {
+            int line = b * LINES_PER_BAND;
+            float a = coefficients[line], c = coefficients[line + 1], d = coefficients[line + 2];
+            float energy = a * a + c * c + d * d;
+            energies[b] = line < longLines ? energy : energy * SHORT_BLOCK_SCALE;
+        }
+        completeFrame(MAX_BANDS);
+    }
+
+    @Override
+    public void subbandSamples(int channel, float[] samples) {
+        for (int b = 0; b < samples.length; b++)
+            energies[b] += samples[b] * samples[b];
+
+        if (channel == channels - 1 && ++slots == SLOTS_PER_GRANULE) {
+            completeFrame(samples.length);
+            slots = 0;
+        }
+    }
+
+    /**
+     * Turn the energies of the frame just filled into a flux and make room for the next.
+     * @param bands number of bands in use
+     */
+    private void completeFrame(int bands) {
+        float flux = 0;
+        for (int b = 0; b < bands; b++) {
+            float amplitude = (float) Math.sqrt(energies[b]);
+            float value = amplitude - previous[b];
+            flux += value < 0 ? 0 : value;
+            previous[b] = amplitude;
+            energies[b] = 0;
+        }
+
+        if (frames == fluxes.length)
+            fluxes = Arrays.copyOf(fluxes, fluxes.length * 2);
+        fluxes[frames++] = flux;
+    }
+}
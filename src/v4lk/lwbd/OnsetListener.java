@@ -0,0 +1,18 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.util.Beat;
+
+/**
+ * Receives beats from a streaming detector as soon as they are confirmed.
+ *
+ * @author Quentin Young
+ */
+public interface OnsetListener {
+
+    /**
+     * Called once for every detected beat, in time order.
+     * @param beat the beat that was just confirmed
+     */
+    public void onBeat(Beat beat);
+
+}
@@ -0,0 +1,171 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.BeatDetector.DetectorSensitivity;
+import v4lk.lwbd.util.Beat;
+
+/**
+ * Push-based beat detector. Feed it consecutive mono analysis frames, 1024 samples
+ * each by default, and it reports each beat to an OnsetListener as soon as the beat
+ * is confirmed, which is one frame more than the threshold radius (with the default
+ * config, 11 frames or roughly 255 ms of audio) after the frame it occurs in.
+ *
+ * Only the threshold window around the current frame is kept, so memory use does
+ * not grow with the length of the audio. Beat times are identical to those
+ * BeatDetector.detectBeats() returns for the same audio. Energies can't be
+ * normalized against the loudest beat of the whole track before the track has
+ * been heard, so they are normalized against the loudest beat seen so far instead.
+ *
+ * @author Quentin Young
+ */
+public class OnsetStream {
+
+    private final SpectralFlux spectralFlux;
+    /**
+     * number of frames on each side of a frame used to calculate its threshold
+     */
+    private final int radius;
+    private final float secondsPerFrame;
+    private final float sensitivity;
+    private final OnsetListener listener;
+    /**
+     * the last 2 * radius + 2 fluxes, indexed by frame number modulo length. One
+     * more than the threshold window so the flux leaving the window is still there
+     * to be subtracted from the running sum.
+     */
+    private final float[] window;
+    private final float[] scratch;
+    /**
+     * number of frames received so far
+     */
+    private int frames;
+    /**
+     * number of frames whose threshold has been applied
+     */
+    private int pruned;
+    /**
+     * running sum of the fluxes in the current threshold window
+     */
+    private double sum;
+    private int removed;
+    private float previousPruned;
+    private float maxEnergy;
+    private boolean finished;
+
+    /**
+     * Initialize a stream
+     * @param sensitivity detector sensitivity
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     * @param listener receives every detected beat
+     */
+    public OnsetStream(DetectorSensitivity sensitivity, OnsetListener listener) {
+        this(sensitivity, AnalysisConfig.DEFAULT, listener);
+    }
+
+    /**
+     * Initialize a stream
+     * @param sensitivity detector sensitivity
+     *                    @see v4lk.lwbd.BeatDetector.DetectorSensitivity
+     * @param config how the frames passed to process() are cut from the audio. Each frame
+     *               must hold the config's FFT size of samples, and start the config's hop
+     *               size of samples after the one before.
+     * @param listener receives every detected beat
+     */
+    public OnsetStream(DetectorSensitivity sensitivity, AnalysisConfig config, OnsetListener listener) {
+        this.spectralFlux = new SpectralFlux(config);
+        this.radius = config.getThresholdRadius();
+        this.secondsPerFrame = (float) config.getHopSize() / config.getSampleRate();
+        this.sensitivity = sensitivity.value;
+        this.listener = listener;
+        this.window = new float[2 * radius + 2];
+        this.scratch = new float[config.getFftSize()];
+    }
+
+    /**
+     * Process the next frame of audio.
+     * @param frame one frame of non-normalized mono PCM samples. With the default config, frames
+     *              as returned by Decoder.nextMonoFrame().
+     */
+    public void process(short[] frame) {
+        checkFrame(frame.length);
+        add(spectralFlux.next(frame, scratch));
+    }
+
+    /**
+     * Process the next frame of audio.
+     * @param frame one frame of mono PCM samples normalized to [-1, 1), as written by
+     *              FloatDecoder.readMono(). Not modified.
+     */
+    public void process(float[] frame) {
+        checkFrame(frame.length);
+        add(spectralFlux.next(frame, 0, scratch));
+    }
+
+    private void checkFrame(int length) {
+        if (finished)
+            throw new IllegalStateException("Stream already finished");
+        if (length != scratch.length)
+            throw new IllegalArgumentException("Frame must contain " + scratch.length + " samples");
+    }
+
+    private void add(float flux) {
+        window[frames % window.length] = flux;
+        sum += flux;
+        frames++;
+
+        // the newest flux completes the threshold window of the frame radius frames back
+        if (frames > radius)
+            prune(frames - 1 - radius, frames - 1);
+    }
+
+    /**
+     * Signal the end of the audio. Thresholds the remaining frames with the shortened
+     * window the end of the track leaves them and reports any beats among them.
+     */
+    public void finish() {
+        if (finished)
+            return;
+        finished = true;
+
+        while (pruned < frames)
+            prune(pruned, frames - 1);
+    }
+
+    /**
+     * @return the number of frames processed so far
+     */
+    public int getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Applies the threshold to frame i and resolves whether frame i - 1 was a peak.
+     * @param i frame to threshold
+     * @param last index of the last frame inside i's threshold window
+     */
+    private void prune(int i, int last) {
+        int start = Math.max(0, i - radius);
+        int end = Math.min(last, i + radius);
+        // same order of additions and removals as BeatDetector, so thresholds match exactly
+        while (removed < start)
+            sum -= window[removed++ % window.length];
+        float mean = (float) (sum / (end - start));
+        float threshold = mean * sensitivity;
+
+        float flux = window[i % window.length];
+        float value = flux >= threshold ? flux - threshold : 0;
+
+        // condense millisecond-consecutive beats to a single beat
+        if (i > 0 && previousPruned > value)
+            emit(i - 1, previousPruned);
+
+        previousPruned = value;
+        pruned = i + 1;
+    }
+
+    private void emit(int frame, float value) {
+        if (value > maxEnergy)
+            maxEnergy = value;
+        long timeInMillis = (long) (((float) frame * secondsPerFrame) * 1000f);
+        listener.onBeat(new Beat(timeInMillis, value / maxEnergy));
+    }
+}
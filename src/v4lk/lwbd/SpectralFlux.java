@@ -0,0 +1,130 @@
+package v4lk.lwbd;
+
+import v4lk.lwbd.decoders.processing.fft.FFT;
+
+/**
+ * Computes the spectral flux between each analysis frame and the one before it.
+ * Shared by the batch and streaming detectors so both see identical flux values.
+ *
+ * @author Quentin Young
+ */
+class SpectralFlux {
+
+    /**
+     * number of samples in one analysis frame of the default config
+     */
+    static final int FRAME_SIZE = 1024;
+
+    private final int frameSize;
+    private final FFT transformer;
+    private final float[] currentSpectrum;
+    private final float[] previousSpectrum;
+    /**
+     * band weights and the rise of each bin, for multi-band flux; null otherwise
+     */
+    private final FilterBank.Weights bands;
+    private final float[] rise;
+
+    SpectralFlux() {
+        this(AnalysisConfig.DEFAULT);
+    }
+
+    SpectralFlux(AnalysisConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param bank bands to calculate the flux of as well as the whole spectrum's, or null
+     */
+    SpectralFlux(AnalysisConfig config, FilterBank bank) {
+        frameSize = config.getFftSize();
+        transformer = new FFT(frameSize, config.getSampleRate());
+        transformer.window(config.fourierWindow());
+        int spectrumSize = (frameSize / 2) + 1;
+        currentSpectrum = new float[spectrumSize];
+        previousSpectrum = new float[spectrumSize];
+        bands = bank != null ? bank.weights(frameSize, config.getSampleRate()) : null;
+        rise = bank != null ? new float[spectrumSize] : null;
+    }
+
+    /**
+     * Calculates the spectral flux between this frame and the previous one.
+     * @param frame frame size normalized mono samples. Windowed in place.
+     * @return the spectral flux
+     */
+    float next(float[] frame) {
+        transform(frame);
+
+        // calculate the spectral flux between two spectra
+        float flux = 0;
+        for (int i = 0; i < currentSpectrum.length; i++) {
+            float tFlux = (currentSpectrum[i] - previousSpectrum[i]);
+            flux += tFlux > 0 ? tFlux : 0;
+        }
+
+        return flux;
+    }
+
+    /**
+     * Calculates the spectral flux between this frame and the previous one, both over
+     * the whole spectrum and in each band of the filter bank this was created with.
+     * The band fluxes come from the same per-bin rises as the whole spectrum's, so
+     * they cost one pass over the bands' weights.
+     * @param frame frame size normalized mono samples. Windowed in place.
+     * @param bandFluxes receives the spectral flux in each band
+     * @return the spectral flux of the whole spectrum
+     */
+    float next(float[] frame, float[] bandFluxes) {
+        transform(frame);
+
+        float flux = 0;
+        for (int i = 0; i < currentSpectrum.length; i++) {
+            float tFlux = (currentSpectrum[i] - previousSpectrum[i]);
+            rise[i] = tFlux > 0 ? tFlux : 0;
+            flux += rise[i];
+        }
+        bands.apply(rise, bandFluxes);
+
+        return flux;
+    }
+
+    private void transform(float[] frame) {
+        // fft
+        transformer.forward(frame);
+        // array shuffle
+        System.arraycopy(currentSpectrum, 0, previousSpectrum, 0, currentSpectrum.length);
+        System.arraycopy(transformer.getSpectrum(), 0, currentSpectrum, 0, currentSpectrum.length);
+    }
+
+    /**
+     * Calculates the spectral flux between this frame and the previous one.
+     * @param protoframe frame size non-normalized mono samples
+     * @param scratch frame size float buffer to convert the samples into
+     * @return the spectral flux
+     */
+    float next(short[] protoframe, float[] scratch) {
+        // convert to float
+        for (int i = 0; i < scratch.length; i++)
+            scratch[i] = (float) protoframe[i] / 32768f;
+        return next(scratch);
+    }
+
+    /**
+     * Calculates the spectral flux between this frame and the previous one.
+     * @param samples buffer holding frame size normalized mono samples. Not modified.
+     * @param offset index of the frame's first sample in samples
+     * @param scratch frame size float buffer to copy the samples into
+     * @return the spectral flux
+     */
+    float next(float[] samples, int offset, float[] scratch) {
+        System.arraycopy(samples, offset, scratch, 0, frameSize);
+        return next(scratch);
+    }
+
+    /**
+     * @return the number of samples in one frame
+     */
+    int getFrameSize() {
+        return frameSize;
+    }
+}
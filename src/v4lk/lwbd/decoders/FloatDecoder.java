@@ -0,0 +1,26 @@
+package v4lk.lwbd.decoders;
+
+import java.io.IOException;
+
+/**
+ * A Decoder that can also write its output straight into a buffer owned by the
+ * caller, as normalized floats. Lets the detector reuse one buffer for the whole
+ * analysis instead of receiving a new array for every frame.
+ */
+public interface FloatDecoder extends Decoder {
+
+    /**
+     * Read decoded mono PCM samples into a caller-owned buffer. Samples are the
+     * same ones nextMonoFrame() would return, divided by 32768 to normalize them
+     * to [-1, 1). Like InputStream.read(), this may read fewer samples than asked
+     * for, but blocks until it can read at least one. nextMonoFrame() and this
+     * method read from the same position in the stream.
+     * @param dst buffer to write samples to
+     * @param off index in dst of the first sample to write
+     * @param len maximum number of samples to write
+     * @return the number of samples written, or -1 if there is no more data available.
+     * @throws java.io.IOException on read error.
+     */
+    public int readMono(float[] dst, int off, int len) throws IOException;
+
+}
@@ -2,16 +2,19 @@ package v4lk.lwbd.decoders;
 
 import com.badlogic.gdx.audio.io.VorbisDecoder;
 import com.badlogic.gdx.files.FileHandle;
-import v4lk.lwbd.decoders.Decoder;
 
 /**
  * Wrapper for Gdx's VorbisDecoder that implements lwbd's decoder interface
  * @author featherdev
  *
  */
-public class GdxVorbisDecoder implements Decoder {
+public class GdxVorbisDecoder implements FloatDecoder {
 
     VorbisDecoder decoder;
+    /**
+     * interleaved stereo samples read by readMono, reused between calls
+     */
+    short[] stereo = new short[0];
 
     public GdxVorbisDecoder(FileHandle f){
         decoder = new VorbisDecoder(f);
@@ -42,4 +45,20 @@ public class GdxVorbisDecoder implements Decoder {
             return mergeChannels(samples);
     }
 
+    @Override
+    public int readMono(float[] dst, int off, int len) {
+        if (stereo.length < len * 2)
+            stereo = new short[len * 2];
+
+        int n = decoder.readSamples(stereo, 0, len * 2) / 2;
+        if (n <= 0)
+            return len > 0 ? -1 : 0;
+
+        // merge channels straight into the caller's buffer
+        for (int i = 0; i < n; i++)
+            dst[off + i] = (short) ((stereo[i * 2] + stereo[i * 2 + 1]) / 2f) / 32768f;
+
+        return n;
+    }
+
 }
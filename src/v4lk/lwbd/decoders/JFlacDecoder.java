@@ -1,36 +1,63 @@
 package v4lk.lwbd.decoders;
 
-import v4lk.lwbd.decoders.Decoder;
+import v4lk.lwbd.decoders.processing.jflac.ChannelData;
 import v4lk.lwbd.decoders.processing.jflac.FLACDecoder;
 import v4lk.lwbd.decoders.processing.jflac.frame.Frame;
 import v4lk.lwbd.decoders.processing.jflac.metadata.Metadata;
 import v4lk.lwbd.decoders.processing.jflac.metadata.StreamInfo;
-import v4lk.lwbd.decoders.processing.jflac.util.ByteData;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * FLAC decoder for lwbd. Backed by jFLAC.
  * @author Quentin Young
  */
-public class JFlacDecoder implements Decoder {
+public class JFlacDecoder implements FloatDecoder {
 
     /**
      * jFlac decoder class
      */
     private FLACDecoder decoder;
+    /**
+     * decodes the frames instead of decoder if a pool was given
+     */
+    private ParallelFlacReader reader;
     /**
      * Information about the FLAC data stream the decoder
      * is working on.
      */
     private StreamInfo info;
     /**
-     * decoded mono sample buffer
+     * number of channels in the stream, 1 or 2
      */
-    private Queue<Short> buffer;
+    private int channels;
+    /**
+     * scale factor that takes a sample of the stream's bit depth to [-1, 1)
+     */
+    private float scale;
+    /**
+     * number of bits a sample must be shifted left to make it 16 bits wide.
+     * Negative for streams deeper than 16 bits.
+     */
+    private int shift;
+    /**
+     * decoded samples of the current block, one array per channel. Owned by
+     * the jFLAC decoder and overwritten when the next block is read.
+     */
+    private int[] left, right;
+    /**
+     * number of samples in the current block
+     */
+    private int blockSize;
+    /**
+     * index of the next unread sample in the current block
+     */
+    private int position;
+    private boolean eof;
 
     /**
      * Initialize this decoder
@@ -40,7 +67,32 @@ public class JFlacDecoder implements Decoder {
     public JFlacDecoder(InputStream stream) throws IOException {
         // setup decoder
         decoder = new FLACDecoder(stream);
-        Metadata[] d = decoder.readMetadata();
+        init(decoder.readMetadata());
+    }
+
+    /**
+     * Initialize this decoder to decode frames in parallel on a pool of worker
+     * threads. The whole stream is read into memory first. Decodes to exactly the
+     * same samples as JFlacDecoder(InputStream).
+     * @param stream binary FLAC input stream
+     * @param pool The pool to decode on, e.g. ForkJoinPool.commonPool().
+     * @throws IOException on decoder error
+     */
+    public JFlacDecoder(InputStream stream, ForkJoinPool pool) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int n;
+        while ((n = stream.read(buffer)) > 0)
+            bytes.write(buffer, 0, n);
+        byte[] data = bytes.toByteArray();
+
+        FLACDecoder metadataDecoder = new FLACDecoder(new ByteArrayInputStream(data));
+        Metadata[] d = metadataDecoder.readMetadata();
+        init(d);
+        reader = new ParallelFlacReader(data, (int) metadataDecoder.getTotalBytesRead(), d, pool);
+    }
+
+    private void init(Metadata[] d) throws IOException {
         info = (StreamInfo) d[0];
 
         // check support
@@ -48,80 +100,105 @@ public class JFlacDecoder implements Decoder {
             throw new IOException("Number of channels > 2; unsupported");
         if (info.getSampleRate() != 44100)
             throw new IOException("Sample rate is not 44.1kHz; unsupported.");
+        if (info.getBitsPerSample() < 4 || info.getBitsPerSample() > 24)
+            throw new IOException("Bits per sample outside 4..24; unsupported.");
 
-        // initialize buffer
-        buffer = new LinkedList<Short>();
+        channels = info.getChannels();
+        scale = 1f / (1 << (info.getBitsPerSample() - 1));
+        shift = 16 - info.getBitsPerSample();
     }
 
     @Override
     public short[] nextMonoFrame() throws IOException {
 
-        if (buffer.size() < 1024)
-            fillBuffer();
+        short[] frame = new short[1024];
+        int n = 0;
 
-        if (buffer.size() < 1024)
-            return null;
+        while (n < frame.length && nextBlock()) {
+            int count = Math.min(frame.length - n, blockSize - position);
 
-        // grab samples from the buffer and return them
-        short[] frame = new short[1024];
-        for (int i = 0; i < frame.length; i++)
-            frame[i] = buffer.poll();
+            // merge channels to mono if we're working with stereo, and rescale to 16 bits
+            for (int i = 0; i < count; i++) {
+                int sample = channels == 2
+                        ? (int) ((toShort(left[position + i]) + toShort(right[position + i])) / 2f)
+                        : toShort(left[position + i]);
+                frame[n + i] = (short) sample;
+            }
 
-        System.out.println(frame.length);
+            position += count;
+            n += count;
+        }
 
-        return frame;
+        return n < frame.length ? null : frame;
     }
 
-    /**
-     * Fills buffer with mono PCM samples as much as it can. Best-effort.
-     * @throws IOException on decoder error
-     */
-    private void fillBuffer() throws IOException {
-
-        while (buffer.size() < 1024) {
-            try {
-                // get & decode a frame
-                Frame encodedFrame = decoder.readNextFrame();
-                ByteData d = decoder.decodeFrame(encodedFrame, null);
-
-                /* ByteData has a larger capacity than the data it contains. getLen()
-                * doesn't return the capacity, it returns the number of valid elements
-                * in the collection. The rest of the values are initialized to 0, so
-                * you can't do a foreach because you'll read out all those as well. */
-                byte[] untrimmedByteFrame = d.getData();
-                byte[] byteFrame = new byte[d.getLen()];
-                for (int i = 0; i < d.getLen(); i++)
-                    byteFrame[i] = untrimmedByteFrame[i];
-
-                // convert byte[] to short[]
-                short[] shortFrame = new short[byteFrame.length];
-                for (int i = 0; i < shortFrame.length; i++)
-                    shortFrame[i] = (short) byteFrame[i];
-
-                // merge channels to mono if we're working with stereo
-                if (info.getChannels() == 2)
-                    shortFrame = mergeChannels(shortFrame);
-
-                // add samples to buffer
-                for (short s : shortFrame)
-                    buffer.add(s);
-
-            } catch (NullPointerException e) { return; }
+    @Override
+    public int readMono(float[] dst, int off, int len) throws IOException {
+
+        int n = 0;
+        while (n < len && nextBlock()) {
+            int count = Math.min(len - n, blockSize - position);
+
+            // merge and scale straight from the decoded block, without going through 16 bit PCM
+            if (channels == 2) {
+                float mixScale = scale * 0.5f;
+                for (int i = 0; i < count; i++)
+                    dst[off + n + i] = (left[position + i] + right[position + i]) * mixScale;
+            } else {
+                for (int i = 0; i < count; i++)
+                    dst[off + n + i] = left[position + i] * scale;
+            }
+
+            position += count;
+            n += count;
         }
+
+        return n == 0 && len > 0 ? -1 : n;
     }
+
     /**
-     * Merges stereo audio by averaging channels together
-     * @param samples interlaced stereo sample buffer
-     * @return mono sample buffer
+     * Makes sure the current block has unread samples, decoding the next one if
+     * the current block is used up.
+     * @return false at the end of the stream
+     * @throws IOException on decoder error
      */
-    private short[] mergeChannels(short[] samples) {
-
-        int l = (int) Math.floor(samples.length / 2);
-        short[] merged = new short[l];
+    private boolean nextBlock() throws IOException {
+
+        while (position == blockSize) {
+            if (eof)
+                return false;
+
+            if (reader != null) {
+                ParallelFlacReader.Segment segment = reader.next();
+                if (segment == null) {
+                    eof = true;
+                    return false;
+                }
+                left = segment.channels[0];
+                right = channels == 2 ? segment.channels[1] : null;
+                blockSize = segment.samples;
+                position = 0;
+                continue;
+            }
+
+            Frame frame = decoder.readNextFrame();
+            if (frame == null) {
+                eof = true;
+                return false;
+            }
+
+            // read the decoded channels in place instead of packing them into PCM bytes
+            ChannelData[] data = decoder.getChannelData();
+            left = data[0].getOutput();
+            right = channels == 2 ? data[1].getOutput() : null;
+            blockSize = frame.header.blockSize;
+            position = 0;
+        }
 
-        for (int i = 0; i < l; i++)
-            merged[i] = (short) ((samples[i * 2] + samples[i * 2 + 1]) / 2f);
+        return true;
+    }
 
-        return merged;
+    private int toShort(int sample) {
+        return shift >= 0 ? sample << shift : sample >> -shift;
     }
-}
\ No newline at end of file
+}
@@ -2,16 +2,31 @@ package v4lk.lwbd.decoders;
 
 import v4lk.lwbd.decoders.processing.jlayer.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * MP3 decoder for lwbd. Backed by JLayer.
  * @author Quentin Young
  */
-public class JLayerMp3Decoder implements v4lk.lwbd.decoders.Decoder {
+public class JLayerMp3Decoder implements FloatDecoder, SampleRateDecoder {
+
+    /**
+     * output at the stream's sample rate
+     */
+    public static final int HIGH_QUALITY = v4lk.lwbd.decoders.processing.jlayer.Decoder.HIGH_QUALITY;
+    /**
+     * output at half the stream's sample rate, e.g. 22.05 kHz, from the 16 lower subbands
+     */
+    public static final int MEDIUM_QUALITY = v4lk.lwbd.decoders.processing.jlayer.Decoder.MEDIUM_QUALITY;
+    /**
+     * output at a quarter of the stream's sample rate, e.g. 11.025 kHz, from the 8 lower
+     * subbands. Keeps everything below about 5 kHz, which is most of what beat detection
+     * needs.
+     */
+    public static final int LOW_QUALITY = v4lk.lwbd.decoders.processing.jlayer.Decoder.LOW_QUALITY;
 
     /**
      * JLayer decoder class
@@ -21,61 +36,255 @@ public class JLayerMp3Decoder implements v4lk.lwbd.decoders.Decoder {
      * MP3 input stream
      */
     private Bitstream bitstream;
+    /**
+     * decodes the frames instead of decoder if a pool was given
+     */
+    private ParallelMp3Reader reader;
     /**
      * decoded mono sample buffer
      */
-    private Queue<Short> buffer;
+    private SampleRing buffer;
+    private final int quality;
+    /**
+     * number of frames to decode and throw away, then of samples, before output starts
+     */
+    private int skipFrames;
+    private int skipSamples;
 
     /**
-     * Initialize this decoder
+     * Initialize this decoder. Stereo layer III streams are mixed down to mono
+     * in the frequency domain, so only one channel goes through the IMDCT and
+     * the synthesis filterbank.
      * @param stream binary MP3 input stream
      * @throws IOException on decoder error
      */
     public JLayerMp3Decoder(InputStream stream) {
+        this(stream, true);
+    }
+
+    /**
+     * Initialize this decoder
+     * @param stream binary MP3 input stream
+     * @param downmix true to mix stereo layer III streams down to mono before
+     *                synthesis, false to synthesize both channels and average
+     *                the resulting PCM. Downmixing first roughly halves the cost
+     *                of the most expensive decoding stages; the output differs
+     *                only by rounding, except where a channel would have clipped.
+     * @throws IOException on decoder error
+     */
+    public JLayerMp3Decoder(InputStream stream, boolean downmix) {
+        this(stream, downmix, HIGH_QUALITY);
+    }
+
+    /**
+     * Initialize this decoder to output audio at a reduced sample rate. Only the lower
+     * subbands go through the IMDCT and the synthesis filterbank, and only the output
+     * samples that are kept are calculated, so decoding takes less time the lower the
+     * quality. Stereo layer III streams are mixed down to mono before synthesis.
+     * @param stream binary MP3 input stream
+     * @param quality HIGH_QUALITY, MEDIUM_QUALITY or LOW_QUALITY
+     */
+    public JLayerMp3Decoder(InputStream stream, int quality) {
+        this(stream, true, quality);
+    }
+
+    /**
+     * Initialize this decoder
+     * @param stream binary MP3 input stream
+     * @param downmix true to mix stereo layer III streams down to mono before
+     *                synthesis, false to synthesize both channels and average
+     *                the resulting PCM.
+     * @param quality HIGH_QUALITY, MEDIUM_QUALITY or LOW_QUALITY
+     */
+    public JLayerMp3Decoder(InputStream stream, boolean downmix, int quality) {
+        this.quality = quality;
         bitstream = new Bitstream(stream);
-        decoder = new v4lk.lwbd.decoders.processing.jlayer.Decoder();
-        buffer =  new LinkedList<Short>();
+        decoder = new v4lk.lwbd.decoders.processing.jlayer.Decoder(params(downmix, quality));
+        buffer = new SampleRing(4096);
+    }
+
+    /**
+     * Initialize this decoder to decode segments of the stream in parallel on a pool
+     * of worker threads. The whole stream is read into memory first. Stereo layer III
+     * streams are mixed down to mono before synthesis.
+     * @param stream binary MP3 input stream
+     * @param pool The pool to decode on, e.g. ForkJoinPool.commonPool().
+     * @throws IOException on read or decoder error
+     */
+    public JLayerMp3Decoder(InputStream stream, ForkJoinPool pool) throws IOException {
+        this(stream, true, HIGH_QUALITY, pool);
+    }
+
+    /**
+     * Initialize this decoder to decode segments of the stream in parallel on a pool
+     * of worker threads. The whole stream is read into memory first. Decodes to the
+     * same samples as JLayerMp3Decoder(stream, downmix, quality), except in streams
+     * that share scalefactors between granules (scfsi) where one is a short block,
+     * which the standard doesn't allow; there the first frame of a segment may differ
+     * slightly, though not with the size of the pool.
+     * @param stream binary MP3 input stream
+     * @param downmix true to mix stereo layer III streams down to mono before
+     *                synthesis, false to synthesize both channels and average
+     *                the resulting PCM.
+     * @param quality HIGH_QUALITY, MEDIUM_QUALITY or LOW_QUALITY
+     * @param pool The pool to decode on, e.g. ForkJoinPool.commonPool().
+     * @throws IOException on read or decoder error
+     */
+    public JLayerMp3Decoder(InputStream stream, boolean downmix, int quality, ForkJoinPool pool) throws IOException {
+        this.quality = quality;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[65536];
+        int n;
+        while ((n = stream.read(chunk)) > 0)
+            bytes.write(chunk, 0, n);
+
+        reader = new ParallelMp3Reader(bytes.toByteArray(), params(downmix, quality), pool);
+        buffer = new SampleRing(4096);
+    }
+
+    /**
+     * Initialize this decoder to start part way into the stream. Stereo layer III
+     * streams are mixed down to mono before synthesis.
+     * @param stream binary MP3 input stream, at its start
+     * @param index the stream's frame index
+     * @param start time to start decoding at, in ms
+     * @throws IOException on read error
+     */
+    public JLayerMp3Decoder(InputStream stream, Mp3FrameIndex index, long start) throws IOException {
+        this(stream, index, start, true, HIGH_QUALITY);
+    }
+
+    /**
+     * Initialize this decoder to start part way into the stream. The frames leading
+     * up to the start are skipped rather than read, except for the few needed to warm
+     * the decoder up. With an exact index the samples are the same ones the other
+     * constructors give from that point on, except in streams that share scalefactors
+     * between granules (scfsi) where one is a short block, which the standard doesn't
+     * allow; there the first frame may differ slightly. With an approximate index
+     * decoding starts near it.
+     * @param stream binary MP3 input stream, at its start
+     * @param index the stream's frame index
+     * @param start time to start decoding at, in ms
+     * @param downmix true to mix stereo layer III streams down to mono before
+     *                synthesis, false to synthesize both channels and average
+     *                the resulting PCM.
+     * @param quality HIGH_QUALITY, MEDIUM_QUALITY or LOW_QUALITY
+     * @throws IOException on read error
+     */
+    public JLayerMp3Decoder(InputStream stream, Mp3FrameIndex index, long start, boolean downmix, int quality) throws IOException {
+        this.quality = quality;
+        int frame = index.getFrame(start);
+        int first = index.getWarmUpFrame(frame);
+        long offset = index.getOffset(first);
+        while (offset > 0) {
+            long skipped = stream.skip(offset);
+            if (skipped > 0)
+                offset -= skipped;
+            else if (stream.read() < 0)
+                break;
+            else
+                offset--;
+        }
+
+        bitstream = new Bitstream(stream);
+        decoder = new v4lk.lwbd.decoders.processing.jlayer.Decoder(params(downmix, quality));
+        buffer = new SampleRing(4096);
+        skipFrames = frame - first;
+        skipSamples = (int) (Math.max(0, start * index.getSampleRate() / 1000 - (long) frame * index.getSamplesPerFrame()) / quality);
+    }
+
+    private static v4lk.lwbd.decoders.processing.jlayer.Decoder.Params params(boolean downmix, int quality) {
+        v4lk.lwbd.decoders.processing.jlayer.Decoder.Params params =
+                v4lk.lwbd.decoders.processing.jlayer.Decoder.getDefaultParams();
+        if (downmix)
+            params.setOutputChannels(OutputChannels.DOWNMIX);
+        params.setQuality(quality);
+        return params;
     }
 
     @Override
     public short[] nextMonoFrame() throws IOException {
 
         if (buffer.size() < 1024)
-            fillBuffer();
+            fillBuffer(1024);
 
         if (buffer.size() < 1024)
             return null;
 
         short[] frame = new short[1024];
-
-        for (int i = 0; i < frame.length; i++)
-            frame[i] = buffer.poll();
+        buffer.read(frame, 0, frame.length);
 
         return frame;
     }
 
+    @Override
+    public int readMono(float[] dst, int off, int len) throws IOException {
+
+        if (buffer.size() < len)
+            fillBuffer(len);
+
+        int n = Math.min(len, buffer.size());
+        if (n == 0 && len > 0)
+            return -1;
+
+        buffer.read(dst, off, n);
+
+        return n;
+    }
+
+    @Override
+    public int getSampleRate() throws IOException {
+        if (reader != null)
+            return reader.getSampleRate() == 0 ? 44100 / quality : reader.getSampleRate();
+
+        // the rate is known once the first frame is decoded
+        if (decoder.getOutputFrequency() == 0)
+            fillBuffer(1);
+        if (decoder.getOutputFrequency() == 0)
+            return 44100 / quality;
+        return decoder.getOutputFrequency();
+    }
+
     /**
      * Fills buffer with mono PCM samples as much as it can. Best-effort.
+     * @param size number of samples to fill the buffer to
      * @throws IOException on decoder error
      */
-    private void fillBuffer() throws IOException {
+    private void fillBuffer(int size) throws IOException {
+
+        while (buffer.size() < size) {
+            if (reader != null) {
+                SampleRing segment = reader.next();
+                if (segment == null) // EoF, return
+                    return;
+                buffer.write(segment);
+                continue;
+            }
 
-        while (buffer.size() < 1024) {
             try {
                 // get & decode a frame
                 Header h = bitstream.readFrame();
                 if (h == null) // EoF, return
                     return;
                 SampleBuffer samplebuffer = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+                if (skipFrames > 0) { // warming up
+                    skipFrames--;
+                    continue;
+                }
                 short[] samples = samplebuffer.getBuffer();
+                int length = samplebuffer.getBufferLength();
 
-                // merge channels to mono if we're working with stereo
+                // add samples to buffer, merging channels to mono if we're working with stereo
                 if (decoder.getOutputChannels() == 2)
-                    samples = mergeChannels(samples);
+                    buffer.writeDownmix(samples, 0, length / 2);
+                else
+                    buffer.write(samples, 0, length);
 
-                // add samples to buffer
-                for (short s : samples)
-                    buffer.add(s);
+                if (skipSamples > 0) {
+                    int n = Math.min(skipSamples, buffer.size());
+                    buffer.skip(n);
+                    skipSamples -= n;
+                }
             } catch (DecoderException e) { throw new IOException("Decoder error", e);
             } catch (BitstreamException e) { throw new IOException("Decoder error", e);
             } finally {
@@ -83,19 +292,4 @@ public class JLayerMp3Decoder implements v4lk.lwbd.decoders.Decoder {
             }
         }
     }
-    /**
-     * Merges stereo audio by averaging channels together
-     * @param samples interlaced stereo sample buffer
-     * @return mono sample buffer
-     */
-    private short[] mergeChannels(short[] samples) {
-
-        int l = (int) Math.floor(samples.length / 2);
-        short[] merged = new short[l];
-
-        for (int i = 0; i < l; i++)
-            merged[i] = (short) ((samples[i * 2] + samples[i * 2 + 1]) / 2f);
-
-        return merged;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+package v4lk.lwbd.decoders;
+
+import v4lk.lwbd.decoders.processing.jlayer.Bitstream;
+import v4lk.lwbd.decoders.processing.jlayer.BitstreamException;
+import v4lk.lwbd.decoders.processing.jlayer.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Where each frame of an MP3 stream starts, so decoding can start anywhere in it
+ * rather than only at the beginning.
+ *
+ * An index is either exact, from scanning every frame header of the stream, or
+ * approximate, from the table of contents in the Xing or VBRI header some encoders
+ * put in the first frame. An exact index finds the frames the way JLayerMp3Decoder
+ * does, so decoding from any frame gives the same samples as decoding the whole
+ * stream; an approximate one only knows where every hundredth or so frame starts,
+ * and guesses the ones in between.
+ *
+ * Indexes are serializable, so a stream only has to be scanned once.
+ *     @see JLayerMp3Decoder#JLayerMp3Decoder(java.io.InputStream, Mp3FrameIndex, long)
+ *
+ * @author Quentin Young
+ */
+public class Mp3FrameIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * furthest back a layer III frame's main data may begin, in bytes
+     */
+    private static final int MAX_MAIN_DATA_BEGIN = 511;
+    /**
+     * largest number of bytes in a frame that aren't main data: header, CRC and side info
+     */
+    private static final int MAX_FRAME_OVERHEAD = 4 + 2 + 32;
+
+    private final int sampleRate;
+    private final int samplesPerFrame;
+    private final int frameCount;
+    /**
+     * frames whose offsets are known, or null if every frame's is
+     */
+    private final int[] frames;
+    /**
+     * offset in the stream of each of those frames, or of every frame; then the
+     * end of the last frame
+     */
+    private final int[] offsets;
+
+    private Mp3FrameIndex(int sampleRate, int samplesPerFrame, int frameCount, int[] frames, int[] offsets) {
+        this.sampleRate = sampleRate;
+        this.samplesPerFrame = samplesPerFrame;
+        this.frameCount = frameCount;
+        this.frames = frames;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Build an exact index by reading every frame header of a stream. The frames'
+     * contents are skipped, not decoded.
+     * @param stream binary MP3 input stream, at its start
+     * @return the index
+     * @throws IOException on read error
+     */
+    public static Mp3FrameIndex scan(InputStream stream) throws IOException {
+        Window in = new Window(stream);
+        int sampleRate = 0, samplesPerFrame = 0;
+        // about 400 bytes per frame at 128 kbps; grown by doubling
+        int[] offsets = new int[4096];
+        int frames = 0;
+
+        // skip an ID3v2 tag
+        int position = 0;
+        if (in.fill(0, 10) == 10 && in.get(0) == 'I' && in.get(1) == 'D' && in.get(2) == '3')
+            position = (in.get(6) << 21) + (in.get(7) << 14) + (in.get(8) << 7) + in.get(9) + 10;
+
+        // Find frames as Bitstream does. A header is only taken for one if another
+        // header, or the end of the stream, follows the frame. The first header's
+        // version, sample rate and mono-ness must match every later one's.
+        int syncword = 0;
+        boolean mono = false;
+        while (true) {
+            int start = position;
+            while (in.fill(start, start + 4) == start + 4 && !isSync(in.getInt(start), frames > 0, syncword, mono))
+                start++;
+            if (in.fill(start, start + 4) < start + 4)
+                break;
+
+            int header = in.getInt(start);
+            int end = start + 4 + Math.max(0, frameSize(header));
+            // a frame cut short by the end of the stream ends it
+            if (in.fill(start, end) < end)
+                break;
+
+            int available = in.fill(start, end + 4) - end;
+            if (available == 0 || available == 4 && isSync(in.getInt(end), frames > 0, syncword, mono)) {
+                if (frames == 0) {
+                    syncword = header & 0xfff80c00;
+                    mono = (header & 0xc0) == 0xc0;
+                    sampleRate = Header.frequencies[version(header)][(header >>> 10) & 3];
+                    samplesPerFrame = samplesPerFrame(header);
+                }
+                if (frames + 1 == offsets.length)
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                offsets[frames++] = start;
+                position = end;
+            } else {
+                // not a frame after all; look again after its header
+                position = start + 4;
+            }
+        }
+
+        offsets[frames] = position;
+        return new Mp3FrameIndex(sampleRate, samplesPerFrame, frames, null, Arrays.copyOf(offsets, frames + 1));
+    }
+
+    /**
+     * Build an approximate index from the table of contents in a stream's Xing or
+     * VBRI header. Only the first frame is read.
+     * @param stream binary MP3 input stream, at its start
+     * @return the index, or null if the stream has no such table of contents
+     * @throws IOException on read or decoder error
+     */
+    public static Mp3FrameIndex fromToc(InputStream stream) throws IOException {
+        Bitstream bitstream = new Bitstream(stream);
+        Header h;
+        try {
+            h = bitstream.readFrame();
+        } catch (BitstreamException e) {
+            throw new IOException("Decoder error", e);
+        }
+        if (h == null || !h.vbr() || h.vbr_frames() < 0 || h.vbr_bytes() < 0)
+            return null;
+
+        int first = bitstream.frame_pos();
+        int bytes = h.vbr_bytes();
+        // the header's frame counts as a frame, since the decoder decodes it
+        int frameCount = h.vbr_frames() + 1;
+        int sampleRate = h.frequency();
+        int samplesPerFrame = h.layer() == 1 ? 384 : h.layer() == 3 && h.version() != Header.MPEG1 ? 576 : 1152;
+
+        int[] frames, offsets;
+        if (h.vbr_toc() != null) {
+            // each entry is the offset into the stream of one percent of its frames,
+            // in 256ths of its length
+            byte[] toc = h.vbr_toc();
+            frames = new int[toc.length + 2];
+            offsets = new int[toc.length + 2];
+            offsets[0] = first;
+            for (int i = 0; i < toc.length; i++) {
+                frames[i + 1] = 1 + (int) ((long) i * (frameCount - 1) / toc.length);
+                offsets[i + 1] = first + (int) ((long) (toc[i] & 0xff) * bytes / 256);
+            }
+        } else if (h.vbri_toc() != null) {
+            // each entry is the length of a run of frames, from the frame after the header's
+            int[] toc = h.vbri_toc();
+            frames = new int[toc.length + 3];
+            offsets = new int[toc.length + 3];
+            offsets[0] = first;
+            frames[1] = 1;
+            offsets[1] = first + h.framesize + 4;
+            for (int i = 0; i < toc.length; i++) {
+                frames[i + 2] = Math.min(frameCount, frames[i + 1] + h.vbri_frames_per_entry());
+                offsets[i + 2] = offsets[i + 1] + toc[i];
+            }
+        } else {
+            return null;
+        }
+
+        frames[frames.length - 1] = frameCount;
+        offsets[offsets.length - 1] = first + bytes;
+        // keep the table in order, whatever the encoder wrote
+        for (int i = 1; i < frames.length; i++) {
+            frames[i] = Math.max(frames[i], frames[i - 1]);
+            offsets[i] = Math.max(offsets[i], offsets[i - 1]);
+        }
+        return new Mp3FrameIndex(sampleRate, samplesPerFrame, frameCount, frames, offsets);
+    }
+
+    /**
+     * @return true if the index has every frame's offset, false if most are guessed
+     */
+    public boolean isExact() {
+        return frames == null;
+    }
+
+    /**
+     * @return the number of frames in the stream
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the stream's sample rate, in Hz, or 0 if it has no frames
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of samples each frame decodes to, at the stream's sample rate
+     */
+    public int getSamplesPerFrame() {
+        return samplesPerFrame;
+    }
+
+    /**
+     * @return the length of the stream, in ms
+     */
+    public long getDuration() {
+        return sampleRate == 0 ? 0 : (long) frameCount * samplesPerFrame * 1000 / sampleRate;
+    }
+
+    /**
+     * @param time a time in the stream, in ms
+     * @return index of the frame that time falls in, or the number of frames if it's
+     *         past the end
+     */
+    public int getFrame(long time) {
+        if (sampleRate == 0 || time <= 0)
+            return 0;
+        return (int) Math.min(frameCount, time * sampleRate / 1000 / samplesPerFrame);
+    }
+
+    /**
+     * @param frame index of a frame, or the number of frames for the end of the last
+     * @return offset in the stream of the frame's header. Approximate unless the
+     *         index is exact.
+     */
+    public int getOffset(int frame) {
+        if (frames == null)
+            return offsets[frame];
+
+        int i = Arrays.binarySearch(frames, frame);
+        if (i >= 0)
+            return offsets[i];
+        if (-i - 1 == frames.length)
+            return offsets[frames.length - 1];
+        // between two entries of the table of contents
+        i = -i - 2;
+        return offsets[i] + (int) ((long) (offsets[i + 1] - offsets[i]) * (frame - frames[i]) / (frames[i + 1] - frames[i]));
+    }
+
+    /**
+     * Find where to start decoding so that a frame decodes exactly as it does when
+     * the whole stream is decoded. A layer III frame's main data may begin up to
+     * 511 bytes back in the bit reservoir, and its first granule overlaps the last
+     * granule of the frame before. So the frame before must be decoded too, and
+     * before that enough frames to fill the reservoir for it. MPEG-2 and 2.5 frames
+     * have only one granule, so the frame before that one's overlap, and the
+     * filterbank's last time slots, come from the frame before it in turn; then the
+     * last two frames before the target must be decoded fully.
+     * @param frame index of a frame
+     * @return index of the frame to start decoding at
+     */
+    int getWarmUpFrame(int frame) {
+        int last = frame - (samplesPerFrame == 576 ? 2 : 1);
+        if (last <= 0)
+            return 0;
+
+        int start = last;
+        while (start > 0 && getOffset(last) - getOffset(start) - (last - start) * MAX_FRAME_OVERHEAD < MAX_MAIN_DATA_BEGIN)
+            start--;
+        return start;
+    }
+
+    /**
+     * Whether a frame header may start with the given four bytes, by the rules of
+     * Bitstream.isSyncMark().
+     * @param strict true to also require the version, sample rate and mono-ness
+     *               of the first frame
+     */
+    private static boolean isSync(int header, boolean strict, int syncword, boolean mono) {
+        boolean sync = strict
+                ? (header & 0xfff80c00) == syncword && ((header & 0xc0) == 0xc0) == mono
+                : (header & 0xffe00000) == 0xffe00000;
+        return sync
+                && ((header >>> 10) & 3) != 3   // sample rate
+                && ((header >>> 17) & 3) != 0   // layer
+                && ((header >>> 19) & 3) != 1;  // version
+    }
+
+    /**
+     * @return Header.MPEG1, MPEG2_LSF or MPEG25_LSF
+     */
+    private static int version(int header) {
+        if (((header >>> 20) & 1) == 0)
+            return Header.MPEG25_LSF;
+        return (header >>> 19) & 1;
+    }
+
+    private static int layer(int header) {
+        return 4 - ((header >>> 17) & 3);
+    }
+
+    /**
+     * @return length of the frame after its header, in bytes, as Header.calculate_framesize()
+     */
+    private static int frameSize(int header) {
+        int version = version(header);
+        int layer = layer(header);
+        int bitrate = Header.bitrates[version][layer - 1][(header >>> 12) & 0xf];
+        int frequency = Header.frequencies[version][(header >>> 10) & 3];
+        int padding = (header >>> 9) & 1;
+
+        int size;
+        if (layer == 1) {
+            size = (12 * bitrate / frequency + padding) << 2;
+        } else {
+            size = 144 * bitrate / frequency;
+            if (version != Header.MPEG1)
+                size >>= 1;
+            size += padding;
+        }
+        return size - 4;
+    }
+
+    private static int samplesPerFrame(int header) {
+        int layer = layer(header);
+        if (layer == 1)
+            return 384;
+        return layer == 3 && version(header) != Header.MPEG1 ? 576 : 1152;
+    }
+
+    /**
+     * A window onto a stream, for reading a few bytes here and there. Anything before
+     * the window is gone, and any gap between the window and where it's asked to move
+     * to is skipped rather than read.
+     */
+    private static class Window {
+        private final InputStream in;
+        private byte[] buffer = new byte[16384];
+        /**
+         * offset in the stream of buffer[0], and number of bytes in buffer
+         */
+        private int start;
+        private int length;
+        private boolean eof;
+
+        private Window(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Make bytes of the stream available.
+         * @param keep offset of the first byte that must stay available. Bytes before
+         *             it may be dropped.
+         * @param end offset of the byte after the last one wanted
+         * @return offset of the byte after the last one available, at most end
+         * @throws IOException on read error
+         */
+        int fill(int keep, int end) throws IOException {
+            if (end <= start + length || eof)
+                return Math.min(end, start + length);
+
+            int drop = Math.min(keep - start, length);
+            System.arraycopy(buffer, drop, buffer, 0, length - drop);
+            start += drop;
+            length -= drop;
+            if (length == 0)
+                while (start < keep && !eof) {
+                    long skipped = in.skip(keep - start);
+                    if (skipped > 0)
+                        start += skipped;
+                    else if (in.read() < 0)
+                        eof = true;
+                    else
+                        start++;
+                }
+
+            if (end - start > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(end - start, buffer.length * 2));
+            while (start + length < end && !eof) {
+                int n = in.read(buffer, length, buffer.length - length);
+                if (n < 0)
+                    eof = true;
+                else
+                    length += n;
+            }
+            return Math.min(end, start + length);
+        }
+
+        /**
+         * @return the byte at an offset in the stream, which must be available
+         */
+        int get(int offset) {
+            return buffer[offset - start] & 0xff;
+        }
+
+        /**
+         * @return the four bytes at an offset in the stream, which must be available,
+         *         big-endian
+         */
+        int getInt(int offset) {
+            int i = offset - start;
+            return (buffer[i] & 0xff) << 24 | (buffer[i + 1] & 0xff) << 16 | (buffer[i + 2] & 0xff) << 8 | buffer[i + 3] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package v4lk.lwbd.decoders;
+
+import v4lk.lwbd.decoders.processing.jflac.ChannelData;
+import v4lk.lwbd.decoders.processing.jflac.FLACDecoder;
+import v4lk.lwbd.decoders.processing.jflac.FrameListener;
+import v4lk.lwbd.decoders.processing.jflac.frame.Frame;
+import v4lk.lwbd.decoders.processing.jflac.metadata.Metadata;
+import v4lk.lwbd.decoders.processing.jflac.metadata.SeekPoint;
+import v4lk.lwbd.decoders.processing.jflac.metadata.SeekTable;
+import v4lk.lwbd.decoders.processing.jflac.metadata.StreamInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the frames of a FLAC stream on a pool of worker threads. FLAC frames
+ * don't depend on each other, so the stream is cut into segments, each segment is
+ * decoded by its own jFLAC decoder, and the decoded samples are handed back segment
+ * by segment, in order.
+ *
+ * A segment holds the frames that start between its cut and the next. If the stream
+ * has a SeekTable the cuts are made at seek points; otherwise at even intervals.
+ * Each worker searches from its cut for a frame sync code, and only takes the frame
+ * there as its first once it has decoded with a valid header CRC-8 and frame CRC-16,
+ * so the search runs in parallel too and no thread has to scan the whole stream.
+ *
+ * The samples are the ones a single FLACDecoder gives, except that a frame failing
+ * its CRC-16 right after a cut is skipped rather than replaced by silence.
+ *
+ * Only a few segments per worker are decoded ahead of the reader, to bound memory.
+ *
+ * @author Quentin Young
+ */
+class ParallelFlacReader {
+
+    /**
+     * smallest and largest segment, in bytes of FLAC data
+     */
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 1024 * 1024;
+    /**
+     * number of segments per worker thread decoded ahead of the reader
+     */
+    private static final int SEGMENTS_AHEAD = 2;
+
+    private final byte[] data;
+    private final StreamInfo info;
+    private final ForkJoinPool pool;
+    /**
+     * offset in data of each cut, then the end of the data
+     */
+    private final int[] cuts;
+    private final Segment[] segments;
+    private int submitted;
+    private int consumed;
+
+    /**
+     * @param data the whole FLAC stream
+     * @param firstFrame offset in data of the first frame, after the metadata
+     * @param metadata the stream's metadata blocks, StreamInfo first
+     * @param pool the pool to decode on
+     */
+    ParallelFlacReader(byte[] data, int firstFrame, Metadata[] metadata, ForkJoinPool pool) {
+        this.data = data;
+        this.info = (StreamInfo) metadata[0];
+        this.pool = pool;
+
+        SeekTable seekTable = null;
+        for (Metadata m : metadata)
+            if (m instanceof SeekTable)
+                seekTable = (SeekTable) m;
+
+        cuts = partition(firstFrame, seekTable);
+        segments = new Segment[cuts.length - 1];
+    }
+
+    /**
+     * Decide where to cut the stream into segments.
+     * @return offset of each cut, the first frame being the first, then the end of the data
+     */
+    private int[] partition(int firstFrame, SeekTable seekTable) {
+        int length = data.length - firstFrame;
+        int count = Math.max(pool.getParallelism() * 4, length / MAX_SEGMENT_SIZE);
+        int size = Math.max(MIN_SEGMENT_SIZE, length / Math.max(1, count));
+
+        ArrayList<Integer> cuts = new ArrayList<Integer>();
+        cuts.add(firstFrame);
+        if (seekTable != null) {
+            // the first seek point at least a segment after the last cut
+            for (int i = 0; i < seekTable.numberOfPoints(); i++) {
+                SeekPoint point = seekTable.getSeekPoint(i);
+                // skip placeholder points
+                if (point.getSampleNumber() == -1L)
+                    continue;
+                long offset = firstFrame + point.getStreamOffset();
+                if (offset >= cuts.get(cuts.size() - 1) + size && offset < data.length)
+                    cuts.add((int) offset);
+            }
+        } else {
+            for (int offset = firstFrame + size; offset < data.length; offset += size)
+                cuts.add(offset);
+        }
+        cuts.add(data.length);
+
+        int[] offsets = new int[cuts.size()];
+        for (int i = 0; i < offsets.length; i++)
+            offsets[i] = cuts.get(i);
+        return offsets;
+    }
+
+    /**
+     * Get the decoded samples of the next segment, waiting for it to be decoded if
+     * it hasn't been yet.
+     * @return the next segment, or null after the last one
+     * @throws IOException on decoder error
+     */
+    Segment next() throws IOException {
+        int ahead = pool.getParallelism() * SEGMENTS_AHEAD;
+        while (submitted < segments.length && submitted - consumed < ahead) {
+            segments[submitted] = new Segment(data, cuts[submitted], cuts[submitted + 1], submitted == 0, info);
+            pool.execute(segments[submitted]);
+            submitted++;
+        }
+
+        if (consumed == segments.length)
+            return null;
+
+        Segment segment = segments[consumed];
+        segments[consumed++] = null;
+        segment.join();
+        if (segment.exception != null)
+            throw segment.exception;
+        return segment;
+    }
+
+    /**
+     * Decodes the frames of one segment.
+     */
+    static class Segment extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] data;
+        /**
+         * the segment's cut and the next one
+         */
+        private final int start, end;
+        /**
+         * whether a frame is known to start at the cut
+         */
+        private final boolean atFrame;
+        private final StreamInfo info;
+        /**
+         * decoded samples, one array per channel
+         */
+        int[][] channels;
+        int samples;
+        private IOException exception;
+
+        private Segment(byte[] data, int start, int end, boolean atFrame, StreamInfo info) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+            this.atFrame = atFrame;
+            this.info = info;
+        }
+
+        @Override
+        protected void compute() {
+            channels = new int[info.getChannels()][Math.max(info.getMaxBlockSize(), 4096) * 16];
+
+            final boolean[] error = new boolean[1];
+            FrameListener listener = new FrameListener() {
+                public void processMetadata(Metadata metadata) {}
+                public void processFrame(Frame frame) {}
+                public void processError(String msg) {
+                    error[0] = true;
+                }
+            };
+
+            try {
+                // find the segment's first frame
+                FLACDecoder decoder = null;
+                Frame frame = null;
+                int first;
+                for (first = start; first < end; first++) {
+                    if (!atFrame) {
+                        // 14 bit sync code, then a reserved bit that must be zero
+                        if (first + 1 >= data.length || data[first] != (byte) 0xff || (data[first + 1] & 0xfe) != 0xf8)
+                            continue;
+                    }
+
+                    error[0] = false;
+                    decoder = new FLACDecoder(new ByteArrayInputStream(data, first, data.length - first), info);
+                    decoder.addFrameListener(listener);
+                    try {
+                        frame = decoder.readNextFrame();
+                    } catch (IOException e) {
+                        if (atFrame)
+                            throw e;
+                        frame = null;
+                    } catch (RuntimeException e) {
+                        // a false sync code can trip jFLAC up in unchecked ways too
+                        if (atFrame)
+                            throw e;
+                        frame = null;
+                    }
+                    if (atFrame || frame != null && !error[0])
+                        break;
+                }
+                if (frame == null)
+                    return;
+                decoder.removeFrameListener(listener);
+
+                // then every frame that starts before the next cut
+                while (frame != null) {
+                    int n = frame.header.blockSize;
+                    if (samples + n > channels[0].length)
+                        for (int c = 0; c < channels.length; c++)
+                            channels[c] = Arrays.copyOf(channels[c], Math.max(samples + n, channels[c].length * 2));
+
+                    ChannelData[] decoded = decoder.getChannelData();
+                    for (int c = 0; c < channels.length; c++)
+                        System.arraycopy(decoded[c].getOutput(), 0, channels[c], samples, n);
+                    samples += n;
+
+                    if (first + decoder.getTotalBytesRead() >= end)
+                        break;
+                    frame = decoder.readNextFrame();
+                }
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package v4lk.lwbd.decoders;
+
+import v4lk.lwbd.decoders.processing.jlayer.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes the frames of an MP3 stream on a pool of worker threads. The stream is
+ * indexed first, the frames are cut into segments, each segment is decoded by its own
+ * JLayer decoder, and the decoded samples are handed back segment by segment, in order.
+ *
+ * Unlike FLAC frames, MP3 frames depend on the ones before them: a layer III frame's
+ * main data may begin up to 511 bytes back in the bit reservoir, each granule's IMDCT
+ * overlaps the one before, and the synthesis filterbank keeps the last 16 time slots.
+ * So each segment starts decoding a few frames early, at its first frame's warm-up
+ * frame, and throws their samples away. The frame right before its own first frame
+ * then has all of its main data in the reservoir; that frame's last granule is all the
+ * IMDCT overlap and filterbank need, so from then on the samples are the same ones a
+ * single decoder gives. (That holds for streams that follow the standard
+ * in only sharing scalefactors between granules, with scfsi, when neither is a short
+ * block. If they don't, the shared scalefactors come from whichever granule last had
+ * long blocks, however far back, and may differ in a segment's first frame. The
+ * segments are cut by frame count alone, so the samples are at least the same ones
+ * whatever the size of the pool.)
+ *
+ * Only a few segments per worker are decoded ahead of the reader, to bound memory.
+ *
+ * @author Quentin Young
+ */
+class ParallelMp3Reader {
+
+    /**
+     * number of frames in each segment, approx. 13 seconds of 44.1 kHz layer III.
+     * Fixed rather than derived from the pool's parallelism, so that where the
+     * segments start doesn't depend on the pool.
+     */
+    private static final int SEGMENT_FRAMES = 512;
+    /**
+     * number of segments per worker thread decoded ahead of the reader
+     */
+    private static final int SEGMENTS_AHEAD = 2;
+
+    private final byte[] data;
+    private final v4lk.lwbd.decoders.processing.jlayer.Decoder.Params params;
+    private final ForkJoinPool pool;
+    private final Mp3FrameIndex index;
+    /**
+     * index of the first frame of each segment, then the number of frames
+     */
+    private final int[] cuts;
+    private final Segment[] segments;
+    private int submitted;
+    private int consumed;
+
+    /**
+     * @param data the whole MP3 stream
+     * @param params parameters for the decoders
+     * @param pool the pool to decode on
+     * @throws IOException on decoder error
+     */
+    ParallelMp3Reader(byte[] data, v4lk.lwbd.decoders.processing.jlayer.Decoder.Params params, ForkJoinPool pool) throws IOException {
+        this.data = data;
+        this.params = params;
+        this.pool = pool;
+
+        index = Mp3FrameIndex.scan(new ByteArrayInputStream(data));
+        cuts = partition(index.getFrameCount());
+        segments = new Segment[cuts.length - 1];
+    }
+
+    /**
+     * Cut the frames into segments.
+     * @return index of the first frame of each segment, then the number of frames
+     */
+    private static int[] partition(int frames) {
+        int[] cuts = new int[(frames + SEGMENT_FRAMES - 1) / SEGMENT_FRAMES + 1];
+        for (int i = 0; i < cuts.length - 1; i++)
+            cuts[i] = i * SEGMENT_FRAMES;
+        cuts[cuts.length - 1] = frames;
+        return cuts;
+    }
+
+    /**
+     * @return the sample rate of the output, or 0 if the stream has no frames
+     */
+    int getSampleRate() {
+        return index.getSampleRate() / params.getQuality();
+    }
+
+    /**
+     * Get the decoded samples of the next segment, waiting for it to be decoded if
+     * it hasn't been yet.
+     * @return the next segment's mono samples, or null after the last segment
+     * @throws IOException on decoder error
+     */
+    SampleRing next() throws IOException {
+        int ahead = pool.getParallelism() * SEGMENTS_AHEAD;
+        while (submitted < segments.length && submitted - consumed < ahead) {
+            segments[submitted] = new Segment(cuts[submitted], cuts[submitted + 1]);
+            pool.execute(segments[submitted]);
+            submitted++;
+        }
+
+        if (consumed == segments.length)
+            return null;
+
+        Segment segment = segments[consumed];
+        segments[consumed++] = null;
+        segment.join();
+        if (segment.exception != null)
+            throw segment.exception;
+        return segment.samples;
+    }
+
+    /**
+     * Decodes the frames of one segment.
+     */
+    private class Segment extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * index of the segment's first frame and of the next segment's
+         */
+        private final int first, end;
+        /**
+         * decoded mono samples
+         */
+        private SampleRing samples;
+        private IOException exception;
+
+        private Segment(int first, int end) {
+            this.first = first;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            int start = index.getWarmUpFrame(first);
+            int offset = index.getOffset(start);
+            Bitstream bitstream = new Bitstream(new ByteArrayInputStream(data, offset, data.length - offset));
+            v4lk.lwbd.decoders.processing.jlayer.Decoder decoder =
+                    new v4lk.lwbd.decoders.processing.jlayer.Decoder(params);
+            samples = new SampleRing((end - first) * 1152 / params.getQuality());
+
+            int frame = start;
+            while (frame < end) {
+                try {
+                    Header h = bitstream.readFrame();
+                    if (h == null) // EoF
+                        break;
+                    // skip anything the scan didn't take for a frame
+                    if (offset + bitstream.frame_pos() < index.getOffset(frame))
+                        continue;
+
+                    SampleBuffer samplebuffer = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+                    if (frame++ < first) // warming up
+                        continue;
+
+                    short[] pcm = samplebuffer.getBuffer();
+                    int length = samplebuffer.getBufferLength();
+                    if (decoder.getOutputChannels() == 2)
+                        samples.writeDownmix(pcm, 0, length / 2);
+                    else
+                        samples.write(pcm, 0, length);
+                } catch (DecoderException e) { exception = new IOException("Decoder error", e); return;
+                } catch (BitstreamException e) { exception = new IOException("Decoder error", e); return;
+                } finally {
+                    bitstream.closeFrame();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package v4lk.lwbd.decoders;
+
+import java.io.IOException;
+
+/**
+ * A Decoder that reports the sample rate of its output. Decoders that don't implement
+ * this are taken to output 44.1 kHz audio; those that do can output at a lower rate,
+ * and the detector cuts their audio into frames spanning the same lengths of time.
+ */
+public interface SampleRateDecoder extends Decoder {
+
+    /**
+     * Get the sample rate of the audio this decoder outputs. May decode the start of the
+     * stream to find out; the samples decoded are still returned in order afterwards.
+     * @return the sample rate, in Hz
+     * @throws java.io.IOException on read error.
+     */
+    public int getSampleRate() throws IOException;
+
+}
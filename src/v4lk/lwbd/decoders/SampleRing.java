@@ -0,0 +1,155 @@
+package v4lk.lwbd.decoders;
+
+/**
+ * FIFO ring of mono PCM samples. Re-chunks whatever block size a codec produces
+ * into the frame size the detector consumes, using bulk copies into one reusable
+ * array instead of a queue of boxed samples.
+ *
+ * @author Quentin Young
+ */
+class SampleRing {
+
+    private short[] samples;
+    /**
+     * index of the oldest sample
+     */
+    private int head;
+    /**
+     * number of samples in the ring
+     */
+    private int size;
+
+    /**
+     * @param capacity number of samples the ring holds before it has to grow
+     */
+    SampleRing(int capacity) {
+        samples = new short[capacity];
+    }
+
+    /**
+     * @return the number of samples in the ring
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Append mono samples.
+     * @param src buffer of mono samples
+     * @param off index of the first sample to append
+     * @param len number of samples to append
+     */
+    void write(short[] src, int off, int len) {
+        ensureFree(len);
+
+        int tail = (head + size) % samples.length;
+        int first = Math.min(len, samples.length - tail);
+        System.arraycopy(src, off, samples, tail, first);
+        System.arraycopy(src, off + first, samples, 0, len - first);
+        size += len;
+    }
+
+    /**
+     * Merge interleaved stereo samples to mono by averaging channels together,
+     * appending the result.
+     * @param src buffer of interleaved stereo samples
+     * @param off index of the first left-channel sample
+     * @param frames number of sample pairs to merge and append
+     */
+    void writeDownmix(short[] src, int off, int frames) {
+        ensureFree(frames);
+
+        int tail = (head + size) % samples.length;
+        int first = Math.min(frames, samples.length - tail);
+        downmix(src, off, samples, tail, first);
+        downmix(src, off + first * 2, samples, 0, frames - first);
+        size += frames;
+    }
+
+    /**
+     * Move all the samples of another ring to the end of this one.
+     * @param src ring to empty
+     */
+    void write(SampleRing src) {
+        int len = src.size();
+        ensureFree(len);
+
+        int tail = (head + size) % samples.length;
+        int first = Math.min(len, samples.length - tail);
+        src.read(samples, tail, first);
+        src.read(samples, 0, len - first);
+        size += len;
+    }
+
+    /**
+     * Append a single mono sample.
+     * @param sample the sample
+     */
+    void write(short sample) {
+        ensureFree(1);
+
+        samples[(head + size) % samples.length] = sample;
+        size++;
+    }
+
+    /**
+     * Remove the oldest samples from the ring.
+     * @param dst buffer to copy the samples to
+     * @param off index in dst of the first sample
+     * @param len number of samples to remove. Must not exceed size().
+     */
+    void read(short[] dst, int off, int len) {
+        int first = Math.min(len, samples.length - head);
+        System.arraycopy(samples, head, dst, off, first);
+        System.arraycopy(samples, 0, dst, off + first, len - first);
+        consume(len);
+    }
+
+    /**
+     * Remove the oldest samples from the ring, normalizing them to [-1, 1).
+     * @param dst buffer to write the normalized samples to
+     * @param off index in dst of the first sample
+     * @param len number of samples to remove. Must not exceed size().
+     */
+    void read(float[] dst, int off, int len) {
+        int first = Math.min(len, samples.length - head);
+        for (int i = 0; i < first; i++)
+            dst[off + i] = (float) samples[head + i] / 32768f;
+        for (int i = first; i < len; i++)
+            dst[off + i] = (float) samples[i - first] / 32768f;
+        consume(len);
+    }
+
+    /**
+     * Remove the oldest samples from the ring.
+     * @param len number of samples to remove. Must not exceed size().
+     */
+    void skip(int len) {
+        consume(len);
+    }
+
+    private void consume(int len) {
+        head = (head + len) % samples.length;
+        size -= len;
+    }
+
+    /**
+     * Grow the ring, if needed, so that it can take n more samples.
+     */
+    private void ensureFree(int n) {
+        if (samples.length - size >= n)
+            return;
+
+        short[] grown = new short[Math.max(samples.length * 2, size + n)];
+        int first = Math.min(size, samples.length - head);
+        System.arraycopy(samples, head, grown, 0, first);
+        System.arraycopy(samples, 0, grown, first, size - first);
+        samples = grown;
+        head = 0;
+    }
+
+    private static void downmix(short[] src, int off, short[] dst, int dstOff, int frames) {
+        for (int i = 0; i < frames; i++)
+            dst[dstOff + i] = (short) ((src[off + i * 2] + src[off + i * 2 + 1]) / 2f);
+    }
+}
@@ -18,6 +18,8 @@
 
 package v4lk.lwbd.decoders.processing.fft;
 
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * FFT stands for Fast Fourier Transform. It is an efficient way to calculate the Complex 
@@ -53,8 +55,7 @@ public class FFT extends FourierTransform
     if ((timeSize & (timeSize - 1)) != 0)
       throw new IllegalArgumentException(
           "FFT: timeSize must be a power of two.");
-    buildReverseTable();
-    buildTrigTables();
+    buildTables();
   }
 
   protected void allocateArrays()
@@ -111,41 +112,45 @@ public class FFT extends FourierTransform
     }
   }
 
-  // performs an in-place fft on the data in the real and imag arrays
+  // performs an in-place fft on the first n values in the real and imag arrays
   // bit reversing is not necessary as the data will already be bit reversed
-  private void fft()
+  private void fft(int n)
   {
-    for (int halfSize = 1; halfSize < real.length; halfSize *= 2)
+    float[] re = real;
+    float[] im = imag;
+    for (int halfSize = 1; halfSize < n; halfSize *= 2)
     {
-      // float k = -(float)Math.PI/halfSize;
-      // phase shift step
-      // float phaseShiftStepR = (float)Math.cos(k);
-      // float phaseShiftStepI = (float)Math.sin(k);
-      // using lookup table
-      float phaseShiftStepR = cos(halfSize);
-      float phaseShiftStepI = sin(halfSize);
-      // current phase shift
-      float currentPhaseShiftR = 1.0f;
-      float currentPhaseShiftI = 0.0f;
+      // the twiddle for step j of this pass is e^(-i * PI * j / halfSize),
+      // which is entry j * stride of the table
+      int stride = timeSize / (2 * halfSize);
       for (int fftStep = 0; fftStep < halfSize; fftStep++)
       {
-        for (int i = fftStep; i < real.length; i += 2 * halfSize)
+        float currentPhaseShiftR = coslookup[fftStep * stride];
+        float currentPhaseShiftI = sinlookup[fftStep * stride];
+        for (int i = fftStep; i < n; i += 2 * halfSize)
         {
           int off = i + halfSize;
-          float tr = (currentPhaseShiftR * real[off]) - (currentPhaseShiftI * imag[off]);
-          float ti = (currentPhaseShiftR * imag[off]) + (currentPhaseShiftI * real[off]);
-          real[off] = real[i] - tr;
-          imag[off] = imag[i] - ti;
-          real[i] += tr;
-          imag[i] += ti;
+          float tr = (currentPhaseShiftR * re[off]) - (currentPhaseShiftI * im[off]);
+          float ti = (currentPhaseShiftR * im[off]) + (currentPhaseShiftI * re[off]);
+          re[off] = re[i] - tr;
+          im[off] = im[i] - ti;
+          re[i] += tr;
+          im[i] += ti;
         }
-        float tmpR = currentPhaseShiftR;
-        currentPhaseShiftR = (tmpR * phaseShiftStepR) - (currentPhaseShiftI * phaseShiftStepI);
-        currentPhaseShiftI = (tmpR * phaseShiftStepI) + (currentPhaseShiftI * phaseShiftStepR);
       }
     }
   }
 
+  /**
+   * Performs a forward transform on <code>buffer</code>. The samples are real, so
+   * they are transformed as a complex signal of half the length, even samples
+   * in the real part and odd samples in the imaginary part, and the two halves
+   * of the spectrum are then separated out again. This is about twice as fast
+   * as a complex transform of the full length with a zero imaginary part.
+   * 
+   * @param buffer
+   *          the buffer to analyze. It is windowed in place.
+   */
   public void forward(float[] buffer)
   {
     if (buffer.length != timeSize)
@@ -153,14 +158,68 @@ public class FFT extends FourierTransform
     	throw new IllegalArgumentException("FFT.forward: The length of the passed sample buffer must be equal to timeSize().");
     }
     doWindow(buffer);
-    // copy samples to real/imag in bit-reversed order
-    bitReverseSamples(buffer);
-    // perform the fft
-    fft();
+    int half = timeSize / 2;
+    // pack sample pairs into real/imag in bit-reversed order
+    for (int i = 0; i < half; i++)
+    {
+      int j = 2 * halfReverse[i];
+      real[i] = buffer[j];
+      imag[i] = buffer[j + 1];
+    }
+    // perform the half size fft
+    fft(half);
+    // separate the spectra of the even and odd samples and combine them
+    // into the spectrum of the whole buffer
+    unpackRealSpectrum();
     // fill the spectrum buffer with amplitudes
     fillSpectrum();
   }
 
+  // turns the half size transform Z of the packed samples in real/imag into
+  // the transform X of the real samples:
+  //   X[k] = (Z[k] + conj(Z[N/2-k])) / 2 - i * e^(-2 * PI * i * k / N) * (Z[k] - conj(Z[N/2-k])) / 2
+  // and mirrors it into the upper half, as the full complex transform would
+  private void unpackRealSpectrum()
+  {
+    int half = timeSize / 2;
+
+    for (int k = 1, m = half - 1; k <= m; k++, m--)
+    {
+      float ar = real[k], ai = imag[k];
+      float br = real[m], bi = imag[m];
+
+      // even part (Z[k] + conj(Z[m])) / 2 and odd part (Z[k] - conj(Z[m])) / 2i
+      float er = 0.5f * (ar + br);
+      float ei = 0.5f * (ai - bi);
+      float or = 0.5f * (ai + bi);
+      float oi = -0.5f * (ar - br);
+
+      float wr = coslookup[k];
+      float wi = sinlookup[k];
+      real[k] = er + (wr * or - wi * oi);
+      imag[k] = ei + (wr * oi + wi * or);
+
+      // X[m] uses the same even and odd parts, conjugated, and the twiddle for
+      // m, which is the negated conjugate of the twiddle for k
+      real[m] = er - (wr * or - wi * oi);
+      imag[m] = -ei + (wr * oi + wi * or);
+    }
+
+    // Z[0] holds the sums of the even and the odd samples
+    float even = real[0];
+    float odd = imag[0];
+    real[0] = even + odd;
+    imag[0] = 0;
+    real[half] = even - odd;
+    imag[half] = 0;
+
+    for (int k = 1; k < half; k++)
+    {
+      real[timeSize - k] = real[k];
+      imag[timeSize - k] = -imag[k];
+    }
+  }
+
   /**
    * Performs a forward transform on the passed buffers.
    * 
@@ -175,7 +234,7 @@ public class FFT extends FourierTransform
     }
     setComplex(buffReal, buffImag);
     bitReverseComplex();
-    fft();
+    fft(timeSize);
     fillSpectrum();
   }
 
@@ -191,7 +250,7 @@ public class FFT extends FourierTransform
       imag[i] *= -1;
     }
     bitReverseComplex();
-    fft();
+    fft(timeSize);
     // copy the result in real into buffer, scaling as we do
     for (int i = 0; i < buffer.length; i++)
     {
@@ -200,68 +259,88 @@ public class FFT extends FourierTransform
   }
 
   private int[] reverse;
+  private int[] halfReverse;
 
-  private void buildReverseTable()
-  {
-    int N = timeSize;
-    reverse = new int[N];
-
-    // set up the bit reversing table
-    reverse[0] = 0;
-    for (int limit = 1, bit = N / 2; limit < N; limit <<= 1, bit >>= 1)
-      for (int i = 0; i < limit; i++)
-        reverse[i + limit] = reverse[i] + bit;
-  }
-
-  // copies the values in the samples array into the real array
-  // in bit reversed order. the imag array is filled with zeros.
-  private void bitReverseSamples(float[] samples)
-  {
-    for (int i = 0; i < samples.length; i++)
-    {
-      real[i] = samples[reverse[i]];
-      imag[i] = 0.0f;
-    }
-  }
-
-  // bit reverse real[] and imag[]
+  // bit reverse real[] and imag[] in place
   private void bitReverseComplex()
   {
-    float[] revReal = new float[real.length];
-    float[] revImag = new float[imag.length];
-    for (int i = 0; i < real.length; i++)
+    for (int i = 0; i < timeSize; i++)
     {
-      revReal[i] = real[reverse[i]];
-      revImag[i] = imag[reverse[i]];
+      int j = reverse[i];
+      if (i < j)
+      {
+        float tr = real[i];
+        real[i] = real[j];
+        real[j] = tr;
+        float ti = imag[i];
+        imag[i] = imag[j];
+        imag[j] = ti;
+      }
     }
-    real = revReal;
-    imag = revImag;
   }
 
   // lookup tables
 
+  // twiddles e^(-2 * PI * i * k / timeSize) for k < timeSize / 2
   private float[] sinlookup;
   private float[] coslookup;
 
-  private float sin(int i)
+  private void buildTables()
   {
-    return sinlookup[i];
+    Tables tables = Tables.forSize(timeSize);
+    reverse = tables.reverse;
+    halfReverse = tables.halfReverse;
+    sinlookup = tables.sinlookup;
+    coslookup = tables.coslookup;
   }
 
-  private float cos(int i)
+  /**
+   * Bit reversal and trig tables for one transform size. They never change once
+   * built, so every FFT of the same size shares one set.
+   */
+  private static class Tables
   {
-    return coslookup[i];
-  }
+    private static final Map<Integer, Tables> cache = new HashMap<Integer, Tables>();
 
-  private void buildTrigTables()
-  {
-    int N = timeSize;
-    sinlookup = new float[N];
-    coslookup = new float[N];
-    for (int i = 0; i < N; i++)
+    final int[] reverse;
+    final int[] halfReverse;
+    final float[] sinlookup;
+    final float[] coslookup;
+
+    private Tables(int N)
     {
-      sinlookup[i] = (float) Math.sin(-(float) Math.PI / i);
-      coslookup[i] = (float) Math.cos(-(float) Math.PI / i);
+      reverse = buildReverseTable(N);
+      halfReverse = buildReverseTable(Math.max(1, N / 2));
+      sinlookup = new float[N / 2];
+      coslookup = new float[N / 2];
+      for (int i = 0; i < N / 2; i++)
+      {
+        sinlookup[i] = (float) -Math.sin(2 * Math.PI * i / N);
+        coslookup[i] = (float) Math.cos(2 * Math.PI * i / N);
+      }
+    }
+
+    static synchronized Tables forSize(int N)
+    {
+      Tables tables = cache.get(N);
+      if (tables == null)
+      {
+        tables = new Tables(N);
+        cache.put(N, tables);
+      }
+      return tables;
+    }
+
+    private static int[] buildReverseTable(int N)
+    {
+      int[] reverse = new int[N];
+
+      // set up the bit reversing table
+      reverse[0] = 0;
+      for (int limit = 1, bit = N / 2; limit < N; limit <<= 1, bit >>= 1)
+        for (int i = 0; i < limit; i++)
+          reverse[i + limit] = reverse[i] + bit;
+      return reverse;
     }
   }
 }
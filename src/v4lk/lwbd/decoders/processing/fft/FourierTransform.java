@@ -132,6 +132,8 @@ public abstract class FourierTransform
   public static final int NONE = 0;
   /** A constant indicating a Hamming window should be used on sample buffers. */
   public static final int HAMMING = 1;
+  /** A constant indicating a Hann window should be used on sample buffers. */
+  public static final int HANN = 5;
   protected static final int LINAVG = 2;
   protected static final int LOGAVG = 3;
   protected static final int NOAVG = 4;
@@ -147,6 +149,11 @@ public abstract class FourierTransform
   protected int whichAverage;
   protected int octaves;
   protected int avgPerOctave;
+  protected boolean powerSpectrum;
+  // window coefficients for the current window type and timeSize
+  private float[] windowTable;
+  // samples copied out of a larger buffer by forward(buffer, startAt)
+  private float[] section;
 
   /**
    * Construct a FourierTransform that will analyze sample buffers that are
@@ -192,9 +199,19 @@ public abstract class FourierTransform
   // and also do spectrum shaping if necessary
   protected void fillSpectrum()
   {
-    for (int i = 0; i < spectrum.length; i++)
+    if (powerSpectrum)
     {
-      spectrum[i] = (float) Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+      for (int i = 0; i < spectrum.length; i++)
+      {
+        spectrum[i] = real[i] * real[i] + imag[i] * imag[i];
+      }
+    }
+    else
+    {
+      for (int i = 0; i < spectrum.length; i++)
+      {
+        spectrum[i] = (float) Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+      }
     }
 
     if (whichAverage == LINAVG)
@@ -312,20 +329,35 @@ public abstract class FourierTransform
    * current window will not be changed.
    * 
    * @param which
-   *          FourierTransform.HAMMING or FourierTransform.NONE
+   *          FourierTransform.HAMMING, FourierTransform.HANN or FourierTransform.NONE
    */
   public void window(int which)
   {
-    if (which < 0 || which > 1)
+    if (which != NONE && which != HAMMING && which != HANN)
     {
       throw new IllegalArgumentException("Invalid window type.");
     }
     else
     {
       whichWindow = which;
+      windowTable = null;
     }
   }
 
+  /**
+   * Sets whether the spectrum holds the power of each frequency band, its squared
+   * amplitude, rather than the amplitude. The power spectrum is cheaper to compute
+   * since it takes no square roots. setBand() and scaleBand() expect amplitudes,
+   * so don't use them while this is on.
+   * 
+   * @param power
+   *          true for a power spectrum, false for an amplitude spectrum
+   */
+  public void powerSpectrum(boolean power)
+  {
+    powerSpectrum = power;
+  }
+
   protected void doWindow(float[] samples)
   {
     switch (whichWindow)
@@ -333,15 +365,44 @@ public abstract class FourierTransform
       case HAMMING:
         hamming(samples);
         break;
+      case HANN:
+        hann(samples);
+        break;
     }
   }
 
   // windows the data in samples with a Hamming window
   protected void hamming(float[] samples)
   {
+    if (windowTable == null || windowTable.length != samples.length)
+    {
+      // the coefficients only depend on the length, so work them out once
+      windowTable = new float[samples.length];
+      for (int i = 0; i < samples.length; i++)
+      {
+        windowTable[i] = (float) (0.54f - 0.46f * Math.cos(TWO_PI * i / (samples.length - 1)));
+      }
+    }
+    for (int i = 0; i < samples.length; i++)
+    {
+      samples[i] *= windowTable[i];
+    }
+  }
+
+  // windows the data in samples with a Hann window
+  protected void hann(float[] samples)
+  {
+    if (windowTable == null || windowTable.length != samples.length)
+    {
+      windowTable = new float[samples.length];
+      for (int i = 0; i < samples.length; i++)
+      {
+        windowTable[i] = (float) (0.5f - 0.5f * Math.cos(TWO_PI * i / (samples.length - 1)));
+      }
+    }
     for (int i = 0; i < samples.length; i++)
     {
-      samples[i] *= (0.54f - 0.46f * Math.cos(TWO_PI * i / (samples.length - 1)));
+      samples[i] *= windowTable[i];
     }
   }
 
@@ -625,7 +686,10 @@ public abstract class FourierTransform
     }
     
     // copy the section of samples we want to analyze
-    float[] section = new float[timeSize];
+    if (section == null)
+    {
+      section = new float[timeSize];
+    }
     System.arraycopy(buffer, startAt, section, 0, section.length);
     forward(section);
   }
@@ -89,6 +89,17 @@ public class FLACDecoder {
         //state = DECODER_SEARCH_FOR_METADATA;
     }
     
+    /**
+     * Constructor for decoding frames from the middle of a stream, whose
+     * metadata has already been read by another decoder.
+     * @param inputStream    The input stream, positioned at a frame
+     * @param streamInfo     The StreamInfo of the stream
+     */
+    public FLACDecoder(InputStream inputStream, StreamInfo streamInfo) {
+        this(inputStream);
+        this.streamInfo = streamInfo;
+    }
+    
     /**
      * Return the parsed StreamInfo Metadata record.
      * @return  The StreamInfo
@@ -660,6 +671,9 @@ public class FLACDecoder {
         } catch (EOFException e) {
             if (!first) frameListeners.processError("FindSync LOST_SYNC: Left over data in file");
             //state = DECODER_END_OF_STREAM;
+            // let the caller see the end of the stream; otherwise readFrame() fails on
+            // the last header bytes and readNextFrame() tries to sync again forever
+            throw e;
         }
     }
     
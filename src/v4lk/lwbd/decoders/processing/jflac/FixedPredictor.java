@@ -198,6 +198,7 @@ public class FixedPredictor {
     
     /**
      * Restore the signal from the fixed predictor.
+     * Each order has its own kernel, which keeps the last samples in locals.
      * @param residual  The residual data
      * @param dataLen   The length of residual data
      * @param order     The preicate order
@@ -205,38 +206,67 @@ public class FixedPredictor {
      * @param startAt   The starting position in the data array
      */
     public static void restoreSignal(int[] residual, int dataLen, int order, int[] data, int startAt) {
-        int idataLen = (int) dataLen;
-        
         switch (order) {
             case 0 :
-                for (int i = 0; i < idataLen; i++) {
-                    data[i + startAt] = residual[i];
-                }
+                System.arraycopy(residual, 0, data, startAt, dataLen);
                 break;
             case 1 :
-                for (int i = 0; i < idataLen; i++) {
-                    data[i + startAt] = residual[i] + data[i + startAt - 1];
-                }
+                restoreSignal1(residual, dataLen, data, startAt);
                 break;
             case 2 :
-                for (int i = 0; i < idataLen; i++) {
-                    /* == residual[i] + 2*data[i-1] - data[i-2] */
-                    data[i + startAt] = residual[i] + (data[i + startAt - 1] << 1) - data[i + startAt - 2];
-                }
+                restoreSignal2(residual, dataLen, data, startAt);
                 break;
             case 3 :
-                for (int i = 0; i < idataLen; i++) {
-                    /* residual[i] + 3*data[i-1] - 3*data[i-2]) + data[i-3] */
-                    data[i + startAt] = residual[i] + (((data[i + startAt - 1] - data[i + startAt - 2]) << 1) + (data[i + startAt - 1] - data[i + startAt - 2])) + data[i + startAt - 3];
-                }
+                restoreSignal3(residual, dataLen, data, startAt);
                 break;
             case 4 :
-                for (int i = 0; i < idataLen; i++) {
-                    /* == residual[i] + 4*data[i-1] - 6*data[i-2] + 4*data[i-3] - data[i-4] */
-                    data[i + startAt] = residual[i] + ((data[i + startAt - 1] + data[i + startAt - 3]) << 2) - ((data[i + startAt - 2] << 2) + (data[i + startAt - 2] << 1)) - data[i + startAt - 4];
-                }
+                restoreSignal4(residual, dataLen, data, startAt);
                 break;
             default :
         }
     }
+    
+    private static void restoreSignal1(int[] residual, int dataLen, int[] data, int startAt) {
+        int d1 = data[startAt - 1];
+        for (int i = 0; i < dataLen; i++) {
+            d1 = residual[i] + d1;
+            data[i + startAt] = d1;
+        }
+    }
+    
+    private static void restoreSignal2(int[] residual, int dataLen, int[] data, int startAt) {
+        int d1 = data[startAt - 1], d2 = data[startAt - 2];
+        for (int i = 0; i < dataLen; i++) {
+            /* == residual[i] + 2*data[i-1] - data[i-2] */
+            int d = residual[i] + (d1 << 1) - d2;
+            data[i + startAt] = d;
+            d2 = d1;
+            d1 = d;
+        }
+    }
+    
+    private static void restoreSignal3(int[] residual, int dataLen, int[] data, int startAt) {
+        int d1 = data[startAt - 1], d2 = data[startAt - 2], d3 = data[startAt - 3];
+        for (int i = 0; i < dataLen; i++) {
+            /* residual[i] + 3*data[i-1] - 3*data[i-2]) + data[i-3] */
+            int d = residual[i] + (((d1 - d2) << 1) + (d1 - d2)) + d3;
+            data[i + startAt] = d;
+            d3 = d2;
+            d2 = d1;
+            d1 = d;
+        }
+    }
+    
+    private static void restoreSignal4(int[] residual, int dataLen, int[] data, int startAt) {
+        int d1 = data[startAt - 1], d2 = data[startAt - 2], d3 = data[startAt - 3], d4 = data[startAt - 4];
+        for (int i = 0; i < dataLen; i++) {
+            /* == residual[i] + 4*data[i-1] - 6*data[i-2] + 4*data[i-3] - data[i-4] */
+            int d = residual[i] + ((d1 + d3) << 2) - ((d2 << 2) + (d2 << 1)) - d4;
+            data[i + startAt] = d;
+            d4 = d3;
+            d3 = d2;
+            d2 = d1;
+            d1 = d;
+        }
+    }
 }
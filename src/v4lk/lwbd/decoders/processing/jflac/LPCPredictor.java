@@ -203,6 +203,7 @@ public class LPCPredictor {
     
     /**
      * Restore the signal from the LPC compression.
+     * Orders 1 to 12 and 32 have their own unrolled kernels.
      * @param residual  The residual signal
      * @param dataLen   The length of the residual data
      * @param qlpCoeff
@@ -212,6 +213,22 @@ public class LPCPredictor {
      * @param startAt   The starting position in the data array
      */
     public static void restoreSignal(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
+        switch (order) {
+            case 1 : restoreSignal1(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 2 : restoreSignal2(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 3 : restoreSignal3(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 4 : restoreSignal4(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 5 : restoreSignal5(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 6 : restoreSignal6(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 7 : restoreSignal7(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 8 : restoreSignal8(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 9 : restoreSignal9(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 10 : restoreSignal10(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 11 : restoreSignal11(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 12 : restoreSignal12(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 32 : restoreSignal32(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            default :
+        }
         //System.out.println("Q="+lpQuantization);
         for (int i = 0; i < dataLen; i++) {
             int sum = 0;
@@ -228,7 +245,10 @@ public class LPCPredictor {
     }
     
     /**
-     * Restore the signal from the LPC compression.
+     * Restore the signal from the LPC compression, with a 64-bit accumulator.
+     * Only needed when the sums can overflow 32 bits, which is when
+     * bps + qlp coeff precision + log2(order) is over 32.
+     * Orders 1 to 12 and 32 have their own unrolled kernels.
      * @param residual  The residual signal
      * @param dataLen   The length of the residual data
      * @param qlpCoeff
@@ -238,6 +258,22 @@ public class LPCPredictor {
      * @param startAt   The starting position in the data array
      */
     public static void restoreSignalWide(int[] residual, int dataLen, int[] qlpCoeff, int order, int lpQuantization, int[] data, int startAt) {
+        switch (order) {
+            case 1 : restoreSignalWide1(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 2 : restoreSignalWide2(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 3 : restoreSignalWide3(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 4 : restoreSignalWide4(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 5 : restoreSignalWide5(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 6 : restoreSignalWide6(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 7 : restoreSignalWide7(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 8 : restoreSignalWide8(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 9 : restoreSignalWide9(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 10 : restoreSignalWide10(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 11 : restoreSignalWide11(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 12 : restoreSignalWide12(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            case 32 : restoreSignalWide32(residual, dataLen, qlpCoeff, lpQuantization, data, startAt); return;
+            default :
+        }
         for (int i = 0; i < dataLen; i++) {
             long sum = 0;
             for (int j = 0; j < order; j++)
@@ -246,6 +282,294 @@ public class LPCPredictor {
         }
     }
     
+    // Kernels for the common orders, with the coefficients in locals and
+    // the sums unrolled. Integer overflow wraps, so they give the same
+    // results as the loops above.
+    
+    private static void restoreSignal1(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal2(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal3(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal4(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal5(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal6(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal7(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal8(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal9(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final int c8 = qlpCoeff[8];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal10(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final int c8 = qlpCoeff[8], c9 = qlpCoeff[9];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal11(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final int c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10] + c10 * data[i - 11];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal12(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final int c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10], c11 = qlpCoeff[11];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10] + c10 * data[i - 11] + c11 * data[i - 12];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignal32(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final int c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final int c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final int c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10], c11 = qlpCoeff[11];
+        final int c12 = qlpCoeff[12], c13 = qlpCoeff[13], c14 = qlpCoeff[14], c15 = qlpCoeff[15];
+        final int c16 = qlpCoeff[16], c17 = qlpCoeff[17], c18 = qlpCoeff[18], c19 = qlpCoeff[19];
+        final int c20 = qlpCoeff[20], c21 = qlpCoeff[21], c22 = qlpCoeff[22], c23 = qlpCoeff[23];
+        final int c24 = qlpCoeff[24], c25 = qlpCoeff[25], c26 = qlpCoeff[26], c27 = qlpCoeff[27];
+        final int c28 = qlpCoeff[28], c29 = qlpCoeff[29], c30 = qlpCoeff[30], c31 = qlpCoeff[31];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            int sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10] + c10 * data[i - 11] + c11 * data[i - 12]
+                + c12 * data[i - 13] + c13 * data[i - 14] + c14 * data[i - 15] + c15 * data[i - 16]
+                + c16 * data[i - 17] + c17 * data[i - 18] + c18 * data[i - 19] + c19 * data[i - 20]
+                + c20 * data[i - 21] + c21 * data[i - 22] + c22 * data[i - 23] + c23 * data[i - 24]
+                + c24 * data[i - 25] + c25 * data[i - 26] + c26 * data[i - 27] + c27 * data[i - 28]
+                + c28 * data[i - 29] + c29 * data[i - 30] + c30 * data[i - 31] + c31 * data[i - 32];
+            data[i] = residual[i - startAt] + (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide1(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide2(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide3(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide4(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide5(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide6(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide7(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide8(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide9(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final long c8 = qlpCoeff[8];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide10(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final long c8 = qlpCoeff[8], c9 = qlpCoeff[9];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide11(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final long c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10] + c10 * data[i - 11];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide12(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final long c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10], c11 = qlpCoeff[11];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10] + c10 * data[i - 11] + c11 * data[i - 12];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
+    private static void restoreSignalWide32(int[] residual, int dataLen, int[] qlpCoeff, int lpQuantization, int[] data, int startAt) {
+        final long c0 = qlpCoeff[0], c1 = qlpCoeff[1], c2 = qlpCoeff[2], c3 = qlpCoeff[3];
+        final long c4 = qlpCoeff[4], c5 = qlpCoeff[5], c6 = qlpCoeff[6], c7 = qlpCoeff[7];
+        final long c8 = qlpCoeff[8], c9 = qlpCoeff[9], c10 = qlpCoeff[10], c11 = qlpCoeff[11];
+        final long c12 = qlpCoeff[12], c13 = qlpCoeff[13], c14 = qlpCoeff[14], c15 = qlpCoeff[15];
+        final long c16 = qlpCoeff[16], c17 = qlpCoeff[17], c18 = qlpCoeff[18], c19 = qlpCoeff[19];
+        final long c20 = qlpCoeff[20], c21 = qlpCoeff[21], c22 = qlpCoeff[22], c23 = qlpCoeff[23];
+        final long c24 = qlpCoeff[24], c25 = qlpCoeff[25], c26 = qlpCoeff[26], c27 = qlpCoeff[27];
+        final long c28 = qlpCoeff[28], c29 = qlpCoeff[29], c30 = qlpCoeff[30], c31 = qlpCoeff[31];
+        for (int i = startAt; i < startAt + dataLen; i++) {
+            long sum = c0 * data[i - 1] + c1 * data[i - 2] + c2 * data[i - 3] + c3 * data[i - 4]
+                + c4 * data[i - 5] + c5 * data[i - 6] + c6 * data[i - 7] + c7 * data[i - 8]
+                + c8 * data[i - 9] + c9 * data[i - 10] + c10 * data[i - 11] + c11 * data[i - 12]
+                + c12 * data[i - 13] + c13 * data[i - 14] + c14 * data[i - 15] + c15 * data[i - 16]
+                + c16 * data[i - 17] + c17 * data[i - 18] + c18 * data[i - 19] + c19 * data[i - 20]
+                + c20 * data[i - 21] + c21 * data[i - 22] + c22 * data[i - 23] + c23 * data[i - 24]
+                + c24 * data[i - 25] + c25 * data[i - 26] + c26 * data[i - 27] + c27 * data[i - 28]
+                + c28 * data[i - 29] + c29 * data[i - 30] + c30 * data[i - 31] + c31 * data[i - 32];
+            data[i] = residual[i - startAt] + (int) (sum >> lpQuantization);
+        }
+    }
+    
     /*
      double FLAC__lpc_compute_expected_bits_per_residual_sample(double lpc_error, int total_samples)
      {
@@ -28,6 +28,9 @@ public abstract class Channel {
 
     /** Partisioned Rice Encoding Method. */
     public static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE = 0;
+
+    /** Partisioned Rice Encoding Method with 5-bit parameters. */
+    public static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE2 = 1;
     
     /** The size of the encoding method field (in bits). */
     public static final int ENTROPY_CODING_METHOD_TYPE_LEN = 2;
@@ -64,10 +64,13 @@ public class ChannelFixed extends Channel {
         EntropyPartitionedRice pr;
         switch (type) {
             case ENTROPY_CODING_METHOD_PARTITIONED_RICE :
+            case ENTROPY_CODING_METHOD_PARTITIONED_RICE2 :
                 int u32 = is.readRawUInt(ENTROPY_CODING_METHOD_PARTITIONED_RICE_ORDER_LEN);
                 pr = new EntropyPartitionedRice();
                 entropyCodingMethod = pr;
                 pr.order = u32;
+                if (type == ENTROPY_CODING_METHOD_PARTITIONED_RICE2)
+                    pr.parameterLen = EntropyPartitionedRice.ENTROPY_CODING_METHOD_PARTITIONED_RICE2_PARAMETER_LEN;
                 pr.contents = channelData.getPartitionedRiceContents();
                 pr.readResidual(is, order, pr.order, header, channelData.getResidual());
                 break;
@@ -89,9 +89,12 @@ public class ChannelLPC extends Channel {
         //System.out.println("codingType="+codingType);
         switch (codingType) {
             case ENTROPY_CODING_METHOD_PARTITIONED_RICE :
+            case ENTROPY_CODING_METHOD_PARTITIONED_RICE2 :
                 entropyCodingMethod = new EntropyPartitionedRice();
                 ((EntropyPartitionedRice) entropyCodingMethod).order = is.readRawUInt(ENTROPY_CODING_METHOD_PARTITIONED_RICE_ORDER_LEN);
                 ((EntropyPartitionedRice) entropyCodingMethod).contents = channelData.getPartitionedRiceContents();
+                if (codingType == ENTROPY_CODING_METHOD_PARTITIONED_RICE2)
+                    ((EntropyPartitionedRice) entropyCodingMethod).parameterLen = EntropyPartitionedRice.ENTROPY_CODING_METHOD_PARTITIONED_RICE2_PARAMETER_LEN;
                 break;
             default :
                 throw new IOException("STREAM_DECODER_UNPARSEABLE_STREAM");
@@ -115,10 +118,7 @@ public class ChannelLPC extends Channel {
         // decode the subframe
         System.arraycopy(warmup, 0, channelData.getOutput(), 0, order);
         if (bps + qlpCoeffPrecision + BitMath.ilog2(order) <= 32) {
-            if (bps <= 16 && qlpCoeffPrecision <= 16)
-                LPCPredictor.restoreSignal(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
-            else
-                LPCPredictor.restoreSignal(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
+            LPCPredictor.restoreSignal(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
         } else {
             LPCPredictor.restoreSignalWide(channelData.getResidual(), header.blockSize - order, qlpCoeff, order, quantizationLevel, channelData.getOutput(), order);
         }
@@ -29,12 +29,13 @@ import java.io.IOException;
  * @author kc7bfi
  */
 public class EntropyPartitionedRice extends EntropyCodingMethod {
-    private static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE_PARAMETER_LEN = 4; /* bits */
+    static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE_PARAMETER_LEN = 4; /* bits */
+    static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE2_PARAMETER_LEN = 5; /* bits */
     private static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE_RAW_LEN = 5; /* bits */
-    private static final int ENTROPY_CODING_METHOD_PARTITIONED_RICE_ESCAPE_PARAMETER = 15;
 
     protected int order; // The partition order, i.e. # of contexts = 2 ^ order.
     protected EntropyPartitionedRiceContents contents; // The context's Rice parameters and/or raw bits.
+    protected int parameterLen = ENTROPY_CODING_METHOD_PARTITIONED_RICE_PARAMETER_LEN; // 5 for RICE2, used by deep streams
 
     /**
      * Read compressed signal residual data.
@@ -53,11 +54,12 @@ public class EntropyPartitionedRice extends EntropyCodingMethod {
         int partitionSamples = partitionOrder > 0 ? header.blockSize >> partitionOrder : header.blockSize - predictorOrder;
         contents.ensureSize(Math.max(6, partitionOrder));
         contents.parameters = new int[partitions];
+        int escapeParameter = (1 << parameterLen) - 1;
 
         for (int partition = 0; partition < partitions; partition++) {
-            int riceParameter = is.readRawUInt(ENTROPY_CODING_METHOD_PARTITIONED_RICE_PARAMETER_LEN);
+            int riceParameter = is.readRawUInt(parameterLen);
             contents.parameters[partition] = riceParameter;
-            if (riceParameter < ENTROPY_CODING_METHOD_PARTITIONED_RICE_ESCAPE_PARAMETER) {
+            if (riceParameter < escapeParameter) {
                 int u = (partitionOrder == 0 || partition > 0) ? partitionSamples : partitionSamples - predictorOrder;
                 is.readRiceSignedBlock(residual, sample, u, riceParameter);
                 sample += u;
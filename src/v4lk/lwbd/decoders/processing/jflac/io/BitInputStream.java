@@ -27,37 +27,36 @@ import java.io.IOException;
 import java.io.InputStream;
 
 
+import java.nio.ByteBuffer;
+
+
 /**
  * Bit-wide input stream.
+ * 
+ * Bits are read through a 64-bit cache, left aligned, which is refilled a
+ * word at a time from the byte buffer. The CRC-16 of the frame is not
+ * updated as bits are read, but over all the bytes consumed since the
+ * last update whenever it's asked for, or before the buffer is refilled.
  * @author kc7bfi
  */
 public class BitInputStream {
     private static final int BITS_PER_BLURB = 8;
     private static final int BITS_PER_BLURB_LOG2 = 3;
-    private static final byte BLURB_TOP_BIT_ONE = ((byte) 0x80);
-    //private static final long[] MASK32 = new long[]{0, 0x0000000000000001, 0x0000000000000003, 0x0000000000000007, 0x000000000000000F,
-    //        0x000000000000001F, 0x000000000000003F, 0x000000000000007F, 0x00000000000000FF, 0x00000000000001FF, 0x00000000000003FF,
-    //        0x00000000000007FF, 0x0000000000000FFF, 0x0000000000001FFF, 0x0000000000003FFF, 0x0000000000007FFF, 0x000000000000FFFF,
-    //        0x000000000001FFFF, 0x000000000003FFFF, 0x000000000007FFFF, 0x00000000000FFFFF, 0x00000000001FFFFF, 0x00000000003FFFFF,
-    //        0x00000000007FFFFF, 0x0000000000FFFFFF, 0x0000000001FFFFFF, 0x0000000003FFFFFF, 0x0000000007FFFFFF, 0x000000000FFFFFFF,
-    //        0x000000001FFFFFFF, 0x000000003FFFFFFF, 0x000000007FFFFFFF, 0x00000000FFFFFFFF, 0x00000001FFFFFFFFL,
-    //        0x00000003FFFFFFFFL, 0x00000007FFFFFFFFL, 0x0000000FFFFFFFFFL, 0x0000001FFFFFFFFFL, 0x0000003FFFFFFFFFL,
-    //        0x0000007FFFFFFFFFL, 0x000000FFFFFFFFFFL, 0x000001FFFFFFFFFFL, 0x000003FFFFFFFFFFL, 0x000007FFFFFFFFFFL,
-    //        0x00000FFFFFFFFFFFL, 0x00001FFFFFFFFFFFL, 0x00003FFFFFFFFFFFL, 0x00007FFFFFFFFFFFL, 0x0000FFFFFFFFFFFFL,
-    //        0x0001FFFFFFFFFFFFL, 0x0003FFFFFFFFFFFFL, 0x0007FFFFFFFFFFFFL, 0x000FFFFFFFFFFFFFL, 0x001FFFFFFFFFFFFFL,
-    //        0x003FFFFFFFFFFFFFL, 0x007FFFFFFFFFFFFFL, 0x00FFFFFFFFFFFFFFL, 0x01FFFFFFFFFFFFFFL, 0x03FFFFFFFFFFFFFFL,
-    //        0x07FFFFFFFFFFFFFFL, 0x0FFFFFFFFFFFFFFFL, 0x1FFFFFFFFFFFFFFFL, 0x3FFFFFFFFFFFFFFFL, 0x7FFFFFFFFFFFFFFFL,
-    //        0xFFFFFFFFFFFFFFFFL};
     
     private static final int BUFFER_CHUNK_SIZE = 1024;
     private byte[] buffer = new byte[BUFFER_CHUNK_SIZE];
+    private ByteBuffer words = ByteBuffer.wrap(buffer);
     private int putByte = 0;
+    /** index of the next byte to load into the cache */
     private int getByte = 0;
-    private int getBit = 0;
-    private int availBits = 0;
+    /** unconsumed bits, left aligned; bits past cacheBits may be set */
+    private long cache = 0;
+    private int cacheBits = 0;
     private int totalBitsRead = 0;
     
     private short readCRC16 = 0;
+    /** index of the first byte not yet added to readCRC16 */
+    private int crcByte = 0;
     
     private InputStream inStream;
     
@@ -69,33 +68,36 @@ public class BitInputStream {
         this.inStream = is;
     }
     
-    //private void resize(int newCapacity) {
-    //    if (buffer.length >= newCapacity) return;
-    //    System.out.println("RESIZE FROM " + buffer.length + " TO " + newCapacity);
-    //    byte[] newBuffer = new byte[newCapacity];
-    //    System.arraycopy(buffer, 0, newBuffer, 0, putByte);
-    //    buffer = newBuffer;
-    //    //return;
-    //}
-    
-    //private void grow(int minBlurbsToAdd) {
-    //    int newCapacity = (buffer.length + minBlurbsToAdd + BUFFER_CHUNK_SIZE - 1) / BUFFER_CHUNK_SIZE;
-    //    resize(newCapacity);
-    //}
+    /**
+     * @return the index in the buffer of the byte holding the next bit
+     */
+    private int consumedBytes() {
+        return ((getByte << BITS_PER_BLURB_LOG2) - cacheBits) >> BITS_PER_BLURB_LOG2;
+    }
     
-    //private void ensureSize(int bitsToAdd) {
-    //    int blurbsToAdd = (bitsToAdd + 7) >> 3;
-    //    if (buffer.length < (putByte + blurbsToAdd))
-    //        grow(blurbsToAdd);
-    //}
+    /**
+     * Add the bytes consumed since the last update to the read CRC-16.
+     */
+    private void updateCRC16() {
+        int end = consumedBytes();
+        if (end > crcByte) {
+            readCRC16 = CRC16.update(buffer, crcByte, end - crcByte, readCRC16);
+            crcByte = end;
+        }
+    }
     
     private int readFromStream() throws IOException {
-        // first shift the unconsumed buffer data toward the front as much as possible
-        if (getByte > 0 && putByte > getByte) {
-            System.arraycopy(buffer, getByte, buffer, 0, putByte - getByte);
+        // first shift the unconsumed buffer data toward the front as much as
+        // possible; bytes already in the cache are kept until they're consumed
+        // so that they can be added to the CRC
+        updateCRC16();
+        int keep = crcByte;
+        if (keep > 0 && putByte > keep) {
+            System.arraycopy(buffer, keep, buffer, 0, putByte - keep);
         }
-        putByte -= getByte;
-        getByte = 0;
+        putByte -= keep;
+        getByte -= keep;
+        crcByte = 0;
         
         // set the target for reading, taking into account blurb alignment
         // blurb == byte, so no gyrations necessary:
@@ -108,18 +110,61 @@ public class BitInputStream {
         // now we have to handle partial blurb cases:
         // blurb == byte, so no gyrations necessary:
         putByte += bytes;
-        availBits += bytes << 3;
         return bytes;
     }
     
+    /**
+     * Top up the cache from the buffer, without reading from the stream.
+     * Leaves at least 56 bits in the cache if the buffer holds enough.
+     */
+    private void refill() {
+        if (putByte - getByte >= 8) {
+            // load as many whole bytes as fit; the bits of the next byte that
+            // also land in the cache are the right ones
+            cache |= words.getLong(getByte) >>> cacheBits;
+            getByte += (63 - cacheBits) >> BITS_PER_BLURB_LOG2;
+            cacheBits |= 56;
+        } else {
+            if (cacheBits == 0) cache = 0;
+            else cache &= -1L << (64 - cacheBits);
+            while (cacheBits <= 56 - BITS_PER_BLURB && getByte < putByte) {
+                cache |= (buffer[getByte++] & 0xffL) << (56 - cacheBits);
+                cacheBits += BITS_PER_BLURB;
+            }
+        }
+    }
+    
+    /**
+     * Make sure the cache holds at least the given number of bits.
+     * @param bits  The number of bits needed, at most 48
+     * @throws java.io.IOException  Thrown if the stream ends first
+     */
+    private void fill(int bits) throws IOException {
+        while (cacheBits < bits) {
+            if (getByte == putByte) readFromStream();
+            refill();
+        }
+    }
+    
+    /**
+     * Consume bits from the cache.
+     * @param bits  The number of bits, at most cacheBits
+     */
+    private void consume(int bits) {
+        cache <<= bits;
+        cacheBits -= bits;
+        totalBitsRead += bits;
+    }
+    
     /**
      * Reset the bit stream.
      */
     public void reset() {
         getByte = 0;
-        getBit = 0;
         putByte = 0;
-        availBits = 0;
+        cache = 0;
+        cacheBits = 0;
+        crcByte = 0;
     }
     
     /**
@@ -128,6 +173,7 @@ public class BitInputStream {
      */
     public void resetReadCRC16(short seed) {
         readCRC16 = seed;
+        crcByte = consumedBytes();
     }
     
     /**
@@ -135,6 +181,7 @@ public class BitInputStream {
      * @return  The read CRC-16 value
      */
     public short getReadCRC16() {
+        updateCRC16();
         return readCRC16;
     }
     
@@ -143,7 +190,7 @@ public class BitInputStream {
      * @return  True of bit stream consumed bits is byte aligned
      */
     public boolean isConsumedByteAligned() {
-        return ((getBit & 7) == 0);
+        return ((cacheBits & 7) == 0);
     }
     
     /**
@@ -151,7 +198,7 @@ public class BitInputStream {
      * @return  The number of bits to align the byte
      */
     public int bitsLeftForByteAlignment() {
-        return 8 - (getBit & 7);
+        return 8 - (-cacheBits & 7);
     }
     
     /**
@@ -159,7 +206,7 @@ public class BitInputStream {
      * @return  The number of bytes left to read
      */
     public int getInputBytesUnconsumed() {
-        return availBits >> 3;
+        return (((putByte - getByte) << BITS_PER_BLURB_LOG2) + cacheBits) >> 3;
     }   
         
     /**
@@ -169,7 +216,7 @@ public class BitInputStream {
      */
     public void skipBitsNoCRC(int bits) throws IOException {
         if (bits == 0) return;
-        int bitsToAlign = getBit & 7;
+        int bitsToAlign = -cacheBits & 7;
         if (bitsToAlign != 0) {
             int bitsToTake = Math.min(8 - bitsToAlign, bits);
             readRawUInt(bitsToTake);
@@ -191,22 +238,10 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public int readBit() throws IOException {
-        while (true) {
-            if (availBits > 0) {
-                int val = ((buffer[getByte] & (0x80 >> getBit)) != 0) ? 1 : 0;
-                getBit++;
-                if (getBit == BITS_PER_BLURB) {
-                    readCRC16 = CRC16.update(buffer[getByte], readCRC16);
-                    getByte++;
-                    getBit = 0;
-                }
-                availBits--;
-                totalBitsRead++;
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        if (cacheBits == 0) fill(1);
+        int val = (int) (cache >>> 63);
+        consume(1);
+        return val;
     }
     
     /**
@@ -218,23 +253,7 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public int readBitToInt(int val) throws IOException {
-        while (true) {
-            if (availBits > 0) {
-                val <<= 1;
-                val |= ((buffer[getByte] & (0x80 >> getBit)) != 0) ? 1 : 0;
-                getBit++;
-                if (getBit == BITS_PER_BLURB) {
-                    readCRC16 = CRC16.update(buffer[getByte], readCRC16);
-                    getByte++;
-                    getBit = 0;
-                }
-                availBits--;
-                totalBitsRead++;
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        return (val << 1) | readBit();
     }
     
     /**
@@ -247,20 +266,8 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public int peekBitToInt(int val, int bit) throws IOException {
-        while (true) {
-            if (bit < availBits) {
-                val <<= 1;
-                if ((getBit + bit) >= BITS_PER_BLURB) {
-                    bit = (getBit + bit) % BITS_PER_BLURB;
-                    val |= ((buffer[getByte + 1] & (0x80 >> bit)) != 0) ? 1 : 0;
-                } else {
-                    val |= ((buffer[getByte] & (0x80 >> (getBit + bit))) != 0) ? 1 : 0;
-                }
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        fill(bit + 1);
+        return (val << 1) | (int) ((cache >>> (63 - bit)) & 1);
     }
     
     /**
@@ -272,23 +279,7 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public long readBitToLong(long val) throws IOException {
-        while (true) {
-            if (availBits > 0) {
-                val <<= 1;
-                val |= ((buffer[getByte] & (0x80 >> getBit)) != 0) ? 1 : 0;
-                getBit++;
-                if (getBit == BITS_PER_BLURB) {
-                    readCRC16 = CRC16.update(buffer[getByte], readCRC16);
-                    getByte++;
-                    getBit = 0;
-                }
-                availBits--;
-                totalBitsRead++;
-                return val;
-            } else {
-                readFromStream();
-            }
-        }
+        return (val << 1) | readBit();
     }
     
     /**
@@ -298,10 +289,10 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public int readRawUInt(int bits) throws IOException {
-        int val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = readBitToInt(val);
-        }
+        if (bits == 0) return 0;
+        if (cacheBits < bits) fill(bits);
+        int val = (int) (cache >>> (64 - bits));
+        consume(bits);
         return val;
     }
     
@@ -312,11 +303,9 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public int peekRawUInt(int bits) throws IOException {
-        int val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = peekBitToInt(val, i);
-        }
-        return val;
+        if (bits == 0) return 0;
+        if (cacheBits < bits) fill(bits);
+        return (int) (cache >>> (64 - bits));
     }
     
     /**
@@ -327,21 +316,10 @@ public class BitInputStream {
      */
     public int readRawInt(int bits) throws IOException { 
         if (bits == 0) { return 0; }
-        int uval = 0;
-        for (int i = 0; i < bits; i++) {
-            uval = readBitToInt(uval);
-        }
-        
-        // fix the sign
-        int val;
-        int bitsToleft = 32 - bits;
-        if (bitsToleft != 0) {
-            uval <<= bitsToleft;
-            val = uval;
-            val >>= bitsToleft;
-        } else {
-            val = uval;
-        }
+        if (cacheBits < bits) fill(bits);
+        // the arithmetic shift fixes the sign
+        int val = (int) (cache >> (64 - bits));
+        consume(bits);
         return val;
     }
     
@@ -352,11 +330,9 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public long readRawULong(int bits) throws IOException {
-        long val = 0;
-        for (int i = 0; i < bits; i++) {
-            val = readBitToLong(val);
-        }
-        return val;
+        if (bits <= 32) return readRawUInt(bits) & 0xffffffffL;
+        long hi = readRawUInt(bits - 32) & 0xffffffffL;
+        return (hi << 32) | (readRawUInt(32) & 0xffffffffL);
     }
     
     /**
@@ -382,7 +358,17 @@ public class BitInputStream {
      * @throws java.io.IOException  Thrown if error reading input stream
      */
     public void readByteBlockAlignedNoCRC(byte[] val, int nvals) throws IOException {
+        updateCRC16();
         int destlength = nvals;
+        
+        // whatever is in the cache comes first
+        while (nvals > 0 && cacheBits >= BITS_PER_BLURB) {
+            byte b = (byte) (cache >>> 56);
+            if (val != null) val[destlength - nvals] = b;
+            consume(BITS_PER_BLURB);
+            nvals--;
+        }
+        
         while (nvals > 0) {
             int chunk = Math.min(nvals, putByte - getByte);
             if (chunk == 0) {
@@ -391,11 +377,11 @@ public class BitInputStream {
                 if (val != null) System.arraycopy(buffer, getByte, val, destlength - nvals, chunk);
                 nvals -= chunk;
                 getByte += chunk;
-                //totalConsumedBits = (getByte << BITS_PER_BLURB_LOG2);
-                availBits -= (chunk << BITS_PER_BLURB_LOG2);
+                cache = 0;
                 totalBitsRead += (chunk << BITS_PER_BLURB_LOG2);
             }
         }
+        crcByte = consumedBytes();
     }
     
     /**
@@ -406,11 +392,16 @@ public class BitInputStream {
     public int readUnaryUnsigned() throws IOException {
         int val = 0;
         while (true) {
-            int bit = readBit();
-            if (bit != 0) break;
-            val++;
+            if (cacheBits == 0) fill(1);
+            int zeros = Long.numberOfLeadingZeros(cache);
+            if (zeros < cacheBits) {
+                consume(zeros + 1);
+                return val + zeros;
+            }
+            // the cache is all zeros
+            val += cacheBits;
+            consume(cacheBits);
         }
-        return val;
     }
     
     /**
@@ -422,198 +413,43 @@ public class BitInputStream {
      * @throws java.io.IOException  On read error
      */
     public void readRiceSignedBlock(int[] vals, int pos, int nvals, int parameter) throws IOException {
-        int j, valI = 0;
-        int cbits = 0, uval = 0, msbs = 0, lsbsLeft = 0;
-        byte blurb, saveBlurb;
-        int state = 0; // 0 = getting unary MSBs, 1 = getting binary LSBs
-        if (nvals == 0) return;
-        int i = getByte;
-        
-        long startBits = getByte * 8 + getBit;
-        
-        // We unroll the main loop to take care of partially consumed blurbs here.
-        if (getBit > 0) {
-            saveBlurb = blurb = buffer[i];
-            cbits = getBit;
-            blurb <<= cbits;
-            while (true) {
-                if (state == 0) {
-                    if (blurb != 0) {
-                        for (j = 0; (blurb & BLURB_TOP_BIT_ONE) == 0; j++)
-                            blurb <<= 1;
-                        msbs += j;
-                        
-                        // dispose of the unary end bit
-                        blurb <<= 1;
-                        j++;
-                        cbits += j;
-                        uval = 0;
-                        lsbsLeft = parameter;
-                        state++;
-                        //totalBitsRead += msbs;
-                        if (cbits == BITS_PER_BLURB) {
-                            cbits = 0;
-                            readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                            break;
-                        }
-                    } else {
-                        msbs += BITS_PER_BLURB - cbits;
-                        cbits = 0;
-                        readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                        //totalBitsRead += msbs;
-                        break;
-                    }
-                } else {
-                    int availableBits = BITS_PER_BLURB - cbits;
-                    if (lsbsLeft >= availableBits) {
-                        uval <<= availableBits;
-                        uval |= ((blurb & 0xff) >> cbits);
-                        cbits = 0;
-                        readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                        //totalBitsRead += availableBits;
-                        if (lsbsLeft == availableBits) {
-                            // compose the value
-                            uval |= (msbs << parameter);
-                            if ((uval & 1) != 0)
-                                vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                            else
-                                vals[pos + valI++] = (int) (uval >> 1);
-                            if (valI == nvals)
-                                break;
-                            msbs = 0;
-                            state = 0;
-                        }
-                        lsbsLeft -= availableBits;
-                        break;
-                    } else {
-                        uval <<= lsbsLeft;
-                        uval |= ((blurb & 0xff) >> (BITS_PER_BLURB - lsbsLeft));
-                        blurb <<= lsbsLeft;
-                        cbits += lsbsLeft;
-                        //totalBitsRead += lsbsLeft;
-                        // compose the value
-                        uval |= (msbs << parameter);
-                        if ((uval & 1) != 0)
-                            vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                        else
-                            vals[pos + valI++] = (int) (uval >> 1);
-                        if (valI == nvals) {
-                            // back up one if we exited the for loop because we
-                            // read all nvals but the end came in the middle of
-                            // a blurb
-                            i--;
-                            break;
-                        }
-                        msbs = 0;
-                        state = 0;
-                    }
-                }
+        int end = pos + nvals;
+        long c = cache;
+        int bits = cacheBits;
+        int read = 0;
+        for (int i = pos; i < end; i++) {
+            if (bits < 32 && putByte - getByte >= 8) {
+                // refill(), on the local copies
+                c |= words.getLong(getByte) >>> bits;
+                getByte += (63 - bits) >> BITS_PER_BLURB_LOG2;
+                bits |= 56;
             }
-            i++;
-            getByte = i;
-            getBit = cbits;
-            //totalConsumedBits = (i << BITS_PER_BLURB_LOG2) | cbits;
-            //totalBitsRead += (BITS_PER_BLURB) | cbits;
-        }
-        
-        // Now that we are blurb-aligned the logic is slightly simpler
-        while (valI < nvals) {
-            for (; i < putByte && valI < nvals; i++) {
-                saveBlurb = blurb = buffer[i];
-                cbits = 0;
-                while (true) {
-                    if (state == 0) {
-                        if (blurb != 0) {
-                            for (j = 0; (blurb & BLURB_TOP_BIT_ONE) == 0; j++) blurb <<= 1;
-                            msbs += j;
-                            // dispose of the unary end bit
-                            blurb <<= 1;
-                            j++;
-                            cbits += j;
-                            uval = 0;
-                            lsbsLeft = parameter;
-                            state++;
-                            //totalBitsRead += msbs;
-                            if (cbits == BITS_PER_BLURB) {
-                                cbits = 0;
-                                readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                                break;
-                            }
-                        } else {
-                            msbs += BITS_PER_BLURB - cbits;
-                            cbits = 0;
-                            readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                            //totalBitsRead += msbs;
-                            break;
-                        }
-                    } else {
-                        int availableBits = BITS_PER_BLURB - cbits;
-                        if (lsbsLeft >= availableBits) {
-                            uval <<= availableBits;
-                            uval |= ((blurb & 0xff) >> cbits);
-                            cbits = 0;
-                            readCRC16 = CRC16.update(saveBlurb, readCRC16);
-                            //totalBitsRead += availableBits;
-                            if (lsbsLeft == availableBits) {
-                                // compose the value
-                                uval |= (msbs << parameter);
-                                if ((uval & 1) != 0)
-                                    vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                                else
-                                    vals[pos + valI++] = (int) (uval >> 1);
-                                if (valI == nvals)
-                                    break;
-                                msbs = 0;
-                                state = 0;
-                            }
-                            lsbsLeft -= availableBits;
-                            break;
-                        } else {
-                            uval <<= lsbsLeft;
-                            uval |= ((blurb & 0xff) >> (BITS_PER_BLURB - lsbsLeft));
-                            blurb <<= lsbsLeft;
-                            cbits += lsbsLeft;
-                            //totalBitsRead += lsbsLeft;
-                            // compose the value
-                            uval |= (msbs << parameter);
-                            if ((uval & 1) != 0)
-                                vals[pos + valI++] = -((int) (uval >> 1)) - 1;
-                            else
-                                vals[pos + valI++] = (int) (uval >> 1);
-                            if (valI == nvals) {
-                                // back up one if we exited the for loop because
-                                // we read all nvals but the end came in the
-                                // middle of a blurb
-                                i--;
-                                break;
-                            }
-                            msbs = 0;
-                            state = 0;
-                        }
-                    }
-                }
-            }
-            getByte = i;
-            getBit = cbits;
-            //totalConsumedBits = (i << BITS_PER_BLURB_LOG2) | cbits;
-            //totalBitsRead += (BITS_PER_BLURB) | cbits;
-            if (valI < nvals) {
-                long endBits = getByte * 8 + getBit;
-                //System.out.println("SE0 "+startBits+" "+endBits);
-                totalBitsRead += endBits - startBits;
-                availBits -=  endBits - startBits;
-                readFromStream();
-                // these must be zero because we can only get here if we got to
-                // the end of the buffer
-                i = 0;
-                startBits = getByte * 8 + getBit;
+            
+            int msbs = Long.numberOfLeadingZeros(c);
+            int len = msbs + 1 + parameter;
+            int uval;
+            if (len <= bits) {
+                // the whole code is in the cache: unary MSBs, end bit, LSBs
+                uval = (msbs << parameter) | (int) (c << msbs << 1 >>> 1 >>> (63 - parameter));
+                c <<= len;
+                bits -= len;
+                read += len;
+            } else {
+                // a long code, or the end of the buffer
+                cache = c;
+                cacheBits = bits;
+                totalBitsRead += read;
+                read = 0;
+                msbs = readUnaryUnsigned();
+                uval = (msbs << parameter) | readRawUInt(parameter);
+                c = cache;
+                bits = cacheBits;
             }
+            vals[i] = (uval >> 1) ^ -(uval & 1);
         }
-        
-        long endBits = getByte * 8 + getBit;
-        //System.out.println("SE1 "+startBits+" "+endBits);
-        totalBitsRead += endBits - startBits;
-        availBits -= endBits - startBits;
+        cache = c;
+        cacheBits = bits;
+        totalBitsRead += read;
     }
     
     /**
@@ -298,6 +298,22 @@ public final class CRC16 {
         return crc;
     }
 
+    /**
+     * Update the CRC with part of a byte array.
+     * 
+     * @param data  The byte array data
+     * @param off   The index of the first byte
+     * @param len   The number of bytes
+     * @param crc   The starting CRC value
+     * @return      The updated CRC value
+     */
+    public static short update(byte[] data, int off, int len, short crc) {
+        int c = crc & 0xffff;
+        for (int i = off; i < off + len; i++)
+            c = ((c << 8) ^ CRC16_TABLE[((c >> 8) ^ data[i]) & 0xff]) & 0xffff;
+        return (short) c;
+    }
+
     /**
      * Update the CRC with the byte array data.
      * 
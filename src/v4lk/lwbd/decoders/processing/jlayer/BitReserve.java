@@ -36,6 +36,8 @@ package v4lk.lwbd.decoders.processing.jlayer;
  * may seem waseful, this can be a factor of two quicker than 
  * packing 8 bits to a byte and extracting. 
  * <p> 
+ * The bytes are also kept packed, so that the Huffman decoder can 
+ * peek at the next several bits at once. 
  */
 
 // REVIEW: there is no range checking, so buffer underflow or overflow
@@ -55,8 +57,14 @@ final class BitReserve
 	 */
 	private static final int		BUFSIZE_MASK = BUFSIZE-1;
 	
+	/**
+	 * Mask for the modulus operation on the number of packed bytes.
+	 */
+	private static final int		PACKED_MASK = (BUFSIZE >>> 3)-1;
+	
 	private int 					offset, totbit, buf_byte_idx;
 	private final int[] 			buf = new int[BUFSIZE];
+	private final byte[]			packed = new byte[BUFSIZE >>> 3];
 	private int 					buf_bit_idx;
 	
    BitReserve()
@@ -182,6 +190,7 @@ final class BitReserve
    public void hputbuf(int val)
    {   	  
 	   int ofs = offset;
+	   packed[ofs >>> 3] = (byte)val;
 	   buf[ofs++] = val & 0x80;
 	   buf[ofs++] = val & 0x40;
 	   buf[ofs++] = val & 0x20;
@@ -198,6 +207,32 @@ final class BitReserve
 	   
    }
  
+   /**
+    * Returns the next N bits without reading them, the first in the
+    * most significant place. Bits past the end of the reserve are 
+    * undefined.
+    * @param N the number of bits, up to 24.
+    */
+   public int hpeekbits(int N)
+   {
+	   int pos = buf_byte_idx;
+	   int i = pos >>> 3;
+	   int word = ((packed[i] & 0xff) << 24)
+	   			| ((packed[(i+1) & PACKED_MASK] & 0xff) << 16)
+	   			| ((packed[(i+2) & PACKED_MASK] & 0xff) << 8)
+	   			| (packed[(i+3) & PACKED_MASK] & 0xff);
+	   return (word << (pos & 7)) >>> (32 - N);
+   }
+   
+   /**
+    * Skip N bits, as if they had been read.
+    */
+   public void hskipbits(int N)
+   {
+	   totbit += N;
+	   buf_byte_idx = (buf_byte_idx + N) & BUFSIZE_MASK;
+   }
+   
    /**
     * Rewind N bits in Stream.
 	*/
@@ -128,6 +128,13 @@ public final class Bitstream implements BitstreamErrors
 
 	private boolean					firstframe = true;
 
+	/**
+	 * Number of bytes read from the stream, ID3v2 tag included,
+	 * and position of the current frame's header.
+	 */
+	private int						position;
+	private int						frame_pos;
+
 
 	/**
 	 * Construct a IBitstream that reads data from a
@@ -140,6 +147,7 @@ public final class Bitstream implements BitstreamErrors
 		if (in==null) throw new NullPointerException("in");
 		in = new BufferedInputStream(in);		
 		loadID3v2(in);
+		position = header_pos;
 		firstframe = true;
 		//source = new PushbackInputStream(in, 1024);
 		source = new PushbackInputStream(in, BUFFER_INT_SIZE*4);
@@ -157,6 +165,15 @@ public final class Bitstream implements BitstreamErrors
 	{
 		return header_pos;
 	}
+
+	/**
+	 * Return position of the header of the frame last read.
+	 * @return number of bytes in the stream before the frame.
+	 */
+	public int frame_pos()
+	{
+		return frame_pos;
+	}
 	
 	/**
 	 * Load ID3v2 frames.
@@ -336,6 +353,7 @@ public final class Bitstream implements BitstreamErrors
 			try
 			{
 				source.unread(frame_bytes, 0, framesize);
+				position -= framesize;
 			}
 			catch (IOException ex)
 			{
@@ -366,6 +384,7 @@ public final class Bitstream implements BitstreamErrors
 		try
 		{
 			source.unread(syncbuf, 0, read);
+			position -= read;
 		}
 		catch (IOException ex)
 		{
@@ -440,6 +459,8 @@ public final class Bitstream implements BitstreamErrors
 		}
 		while (!sync);
 
+		frame_pos = position - 4;
+
 		//current_frame_number++;
 		//if (last_frame_number < current_frame_number) last_frame_number = current_frame_number;
 
@@ -609,6 +630,7 @@ public final class Bitstream implements BitstreamErrors
 					//throw newBitstreamException(UNEXPECTED_EOF, new EOFException());
 				}
 				nRead = nRead + bytesread;
+				position += bytesread;
 				offs += bytesread;
 				len -= bytesread;
 			}
@@ -638,6 +660,7 @@ public final class Bitstream implements BitstreamErrors
 					break;
 				}
 				totalBytesRead += bytesread;
+				position += bytesread;
 				offs += bytesread;
 				len -= bytesread;
 			}
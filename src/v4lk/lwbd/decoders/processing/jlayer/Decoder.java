@@ -32,6 +32,15 @@ public class Decoder implements DecoderErrors
 {
 	static private final Params DEFAULT_PARAMS = new Params();
 	
+	/**
+	 * Quality settings: output at the stream's sample rate, at half
+	 * of it from the lower 16 subbands, or at a quarter of it from the
+	 * lower 8 subbands. 
+	 */
+	public static final int HIGH_QUALITY = SynthesisFilter.HIGH_QUALITY;
+	public static final int MEDIUM_QUALITY = SynthesisFilter.MEDIUM_QUALITY;
+	public static final int LOW_QUALITY = SynthesisFilter.LOW_QUALITY;
+	
 	/**
 	 * The Bistream from which the MPEG audio frames are read.
 	 */
@@ -62,11 +71,18 @@ public class Decoder implements DecoderErrors
 	
 	private int						outputFrequency;
 	private int						outputChannels;
+	/**
+	 * One of the OutputChannels constants, chosen from the params
+	 * when the first frame is decoded.
+	 */
+	private int						outputMode;
 	
 	private Equalizer				equalizer = new Equalizer();
 	
 	private Params					params;
 	
+	private SpectrumListener		spectrumListener;
+	
 	private boolean					initialized;
 		
 	
@@ -122,6 +138,25 @@ public class Decoder implements DecoderErrors
 			filter2.setEQ(factors);			
 	}
 	
+	/**
+	 * Sets a listener to receive the frequency-domain data of each
+	 * frame decoded from now on, in place of PCM output, or null to
+	 * decode to PCM again.
+	 * 
+	 * @see SpectrumListener
+	 */
+	public void setSpectrumListener(SpectrumListener listener)
+	{
+		spectrumListener = listener;
+		
+		if (filter1!=null)
+			filter1.setSpectrumListener(listener);
+		if (filter2!=null)
+			filter2.setSpectrumListener(listener);
+		if (l3decoder!=null)
+			l3decoder.setSpectrumListener(listener);
+	}
+	
 	/**
 	 * Decodes one frame from an MPEG audio bitstream.
 	 * 
@@ -219,8 +254,6 @@ public class Decoder implements DecoderErrors
 	{
 		FrameDecoder decoder = null;
 		
-		// REVIEW: allow channel output selection type
-		// (LEFT, RIGHT, BOTH, DOWNMIX)
 		switch (layer)
 		{
 		case 3:
@@ -228,7 +261,8 @@ public class Decoder implements DecoderErrors
 			{
 				l3decoder = new LayerIIIDecoder(stream, 
 					header, filter1, filter2, 
-					output, OutputChannels.BOTH_CHANNELS);
+					output, outputMode);
+				l3decoder.setSpectrumListener(spectrumListener);
 			}						
 			
 			decoder = l3decoder;
@@ -239,7 +273,7 @@ public class Decoder implements DecoderErrors
 				l2decoder = new LayerIIDecoder();
 				l2decoder.create(stream, 
 					header, filter1, filter2, 
-					output, OutputChannels.BOTH_CHANNELS);				
+					output, outputMode);				
 			}
 			decoder = l2decoder;
 			break;
@@ -249,7 +283,7 @@ public class Decoder implements DecoderErrors
 				l1decoder = new LayerIDecoder();
 				l1decoder.create(stream, 
 					header, filter1, filter2, 
-					output, OutputChannels.BOTH_CHANNELS);				
+					output, outputMode);				
 			}
 			decoder = l1decoder;
 			break;
@@ -274,20 +308,36 @@ public class Decoder implements DecoderErrors
 		int layer = header.layer();
 		int channels = mode==Header.SINGLE_CHANNEL ? 1 : 2;
 
-					
+		outputMode = params.getOutputChannels().getChannelsOutputCode();
+		// only layer III mixes the channels before synthesis; the layer I and II
+		// decoders would output just the right channel
+		if (outputMode==OutputChannels.DOWNMIX_CHANNELS && layer!=3)
+			outputMode = OutputChannels.BOTH_CHANNELS;
+		if (channels==1)
+			outputMode = OutputChannels.BOTH_CHANNELS;
+		if (outputMode!=OutputChannels.BOTH_CHANNELS)
+			channels = 1;
+
+		int quality = params.getQuality();
+		
 		// set up output buffer if not set up by client.
 		if (output==null)
-			output = new SampleBuffer(header.frequency(), channels);
+			output = new SampleBuffer(header.frequency() / quality, channels);
 		
 		float[] factors = equalizer.getBandFactors();
 		filter1 = new SynthesisFilter(0, scalefactor, factors);
+		filter1.setQuality(quality);
    		
-		// REVIEW: allow mono output for stereo
 		if (channels==2) 
+		{
 			filter2 = new SynthesisFilter(1, scalefactor, factors);
+			filter2.setQuality(quality);
+		}
+		
+		setSpectrumListener(spectrumListener);
 
 		outputChannels = channels;
-		outputFrequency = header.frequency();
+		outputFrequency = header.frequency() / quality;
 		
 		initialized = true;
 	}
@@ -304,6 +354,8 @@ public class Decoder implements DecoderErrors
 		
 		private Equalizer		equalizer = new Equalizer();
 		
+		private int				quality = HIGH_QUALITY;
+		
 		public Params()
 		{			
 		}
@@ -333,6 +385,25 @@ public class Decoder implements DecoderErrors
 			return outputChannels;
 		}
 		
+		/**
+		 * Sets the quality of the decoder's output: HIGH_QUALITY,
+		 * MEDIUM_QUALITY or LOW_QUALITY. Lower qualities synthesize
+		 * fewer subbands and output fewer samples per frame, at a 
+		 * lower sample rate, for less CPU time.
+		 */
+		public void setQuality(int quality)
+		{
+			if (quality!=HIGH_QUALITY && quality!=MEDIUM_QUALITY && quality!=LOW_QUALITY)
+				throw new IllegalArgumentException("Unknown quality value");
+			
+			this.quality = quality;
+		}
+		
+		public int getQuality()
+		{
+			return quality;
+		}
+		
 		/**
 		 * Retrieves the equalizer settings that the decoder's equalizer
 		 * will be initialized from.
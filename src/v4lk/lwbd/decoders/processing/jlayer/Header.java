@@ -74,6 +74,8 @@ public final class Header
 	private int				h_vbr_scale;
 	private int				h_vbr_bytes;
 	private byte[]			h_vbr_toc;
+	private int[]			h_vbri_toc;
+	private int				h_vbri_frames_per_entry;
 	
 	private byte			syncmode = Bitstream.INITIAL_SYNC;
 	private Crc16			crc;
@@ -266,7 +268,7 @@ public final class Header
 				h_vbr_frames = -1;
 				h_vbr_bytes = -1;
 				h_vbr_scale = -1;
-				h_vbr_toc = new byte[100];
+				h_vbr_toc = null;
 								
 				int length = 4;
 				// Read flags.
@@ -290,6 +292,7 @@ public final class Header
 				// Read TOC (if available).
 				if ((flags[3] & (byte) (1 << 2)) != 0)
 				{
+					h_vbr_toc = new byte[100];
 					System.arraycopy(firstframe, offset + length, h_vbr_toc, 0, h_vbr_toc.length);
 					length += h_vbr_toc.length;	
 				}
@@ -322,7 +325,7 @@ public final class Header
 				h_vbr_frames = -1;
 				h_vbr_bytes = -1;
 				h_vbr_scale = -1;
-				h_vbr_toc = new byte[100];
+				h_vbr_toc = null;
 				// Bytes.				
 				int length = 4 + 6;
 				System.arraycopy(firstframe, offset + length, tmp, 0, tmp.length);
@@ -333,8 +336,25 @@ public final class Header
 				h_vbr_frames = (tmp[0] << 24)&0xFF000000 | (tmp[1] << 16)&0x00FF0000 | (tmp[2] << 8)&0x0000FF00 | tmp[3]&0x000000FF;
 				length += 4;	
 				//System.out.println("VBR:"+vbri+" Frames:"+ h_vbr_frames +" Size:"+h_vbr_bytes);
-				// TOC
-				// TODO				
+				// TOC: the size in bytes of each run of frames_per_entry frames.
+				int entries = ((firstframe[offset + length] & 0xFF) << 8) | (firstframe[offset + length + 1] & 0xFF);
+				int scale = ((firstframe[offset + length + 2] & 0xFF) << 8) | (firstframe[offset + length + 3] & 0xFF);
+				int size = ((firstframe[offset + length + 4] & 0xFF) << 8) | (firstframe[offset + length + 5] & 0xFF);
+				int frames = ((firstframe[offset + length + 6] & 0xFF) << 8) | (firstframe[offset + length + 7] & 0xFF);
+				length += 8;
+				// ignore a TOC that doesn't fit in the frame buffer
+				if (size >= 1 && size <= 4 && frames > 0 && offset + length + entries * size <= firstframe.length)
+				{
+					h_vbri_toc = new int[entries];
+					h_vbri_frames_per_entry = frames;
+					for (int i = 0; i < entries; i++)
+					{
+						int value = 0;
+						for (int b = 0; b < size; b++)
+							value = (value << 8) | (firstframe[offset + length++] & 0xFF);
+						h_vbri_toc[i] = value * scale;
+					}
+				}
 			}
 		}
 		catch (ArrayIndexOutOfBoundsException e)
@@ -411,6 +431,30 @@ public final class Header
 	 */
 	public byte[] vbr_toc() { return h_vbr_toc; }
 
+	/**
+	 * Return number of frames from the VBR header.
+	 * @return frames or -1 if not available
+	 */
+	public int vbr_frames() { return h_vbr_frames; }
+
+	/**
+	 * Return number of bytes from the VBR header.
+	 * @return bytes or -1 if not available
+	 */
+	public int vbr_bytes() { return h_vbr_bytes; }
+
+	/**
+	 * Return VBRI TOC.
+	 * @return size in bytes of each run of vbri_frames_per_entry() frames,
+	 *         or null if not available
+	 */
+	public int[] vbri_toc() { return h_vbri_toc; }
+
+	/**
+	 * Return number of frames each VBRI TOC entry covers.
+	 */
+	public int vbri_frames_per_entry() { return h_vbri_frames_per_entry; }
+
 	/**
 	 * Returns Checksum flag.
 	 * Compares computed checksum with stream checksum.
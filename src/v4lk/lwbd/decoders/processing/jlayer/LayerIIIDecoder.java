@@ -58,6 +58,7 @@ final class LayerIIIDecoder implements FrameDecoder
 	private Bitstream 			stream;
     private Header 				header;
     private SynthesisFilter 	filter1, filter2;
+	private SpectrumListener	spectrumListener;
     private Obuffer 			buffer;
     private int 				which_channels;
     private BitReserve 			br;
@@ -136,10 +137,14 @@ final class LayerIIIDecoder implements FrameDecoder
 		sfBandIndex[8]= new SBI(l8,s8);
 		// END OF L3TABLE INIT
 
-		if(reorder_table == null) {	// SZD: generate LUT
-			reorder_table = new int[9][];
-			for(int i = 0; i < 9; i++)
-				reorder_table[i] = reorder(sfBandIndex[i].s);
+		// decoders may be created on several threads at once
+		synchronized (LayerIIIDecoder.class) {
+			if(reorder_table == null) {	// SZD: generate LUT
+				int[][] table = new int[9][];
+				for(int i = 0; i < 9; i++)
+					table[i] = reorder(sfBandIndex[i].s);
+				reorder_table = table;
+			}
 		}
 
 		// Sftable
@@ -236,6 +241,8 @@ final class LayerIIIDecoder implements FrameDecoder
 	    int main_data_end;
 		int bytes_to_discard;
 	    int i;
+		// only the subbands the filters synthesize need the IMDCT
+		int sb18limit = filter1.getSubbands() * SSLIMIT;
 
 		get_side_info();
 
@@ -288,23 +295,29 @@ final class LayerIIIDecoder implements FrameDecoder
 	         for (ch=first_channel; ch<=last_channel; ch++) {
 
 	         		reorder(lr[ch], ch, gr);
-						antialias(ch, gr);
+
+					if (spectrumListener != null) {
+						// stop at the MDCT coefficients
+						spectrumListener.granule(ch, out_1d, longLines(ch, gr));
+						continue;
+					}
+						antialias(ch, gr, sb18limit);
                  //for (int hb = 0;hb<576;hb++) CheckSumOut1d = CheckSumOut1d + out_1d[hb];
 				 //System.out.println("CheckSumOut1d = "+CheckSumOut1d);
 
-	               hybrid(ch, gr);
+	               hybrid(ch, gr, sb18limit);
 
 	             //for (int hb = 0;hb<576;hb++) CheckSumOut1d = CheckSumOut1d + out_1d[hb];
 				 //System.out.println("CheckSumOut1d = "+CheckSumOut1d);
 
-						for (sb18=18;sb18<576;sb18+=36) // Frequency inversion
+						for (sb18=18;sb18<sb18limit;sb18+=36) // Frequency inversion
 	                   for (ss=1;ss<SSLIMIT;ss+=2)
 	                  	  out_1d[sb18 + ss] = -out_1d[sb18 + ss];
 
 						if ((ch == 0) || (which_channels == OutputChannels.RIGHT_CHANNEL)) {
 						  for (ss=0;ss<SSLIMIT;ss++) { // Polyphase synthesis
 	                  	sb = 0;
-	                 		for (sb18=0; sb18<576; sb18+=18) {
+	                 		for (sb18=0; sb18<sb18limit; sb18+=18) {
 								samples1[sb] =  out_1d[sb18+ss];
 								//filter1.input_sample(out_1d[sb18+ss], sb);
 	                         sb++;
@@ -315,7 +328,7 @@ final class LayerIIIDecoder implements FrameDecoder
 						} else {
 						  for (ss=0;ss<SSLIMIT;ss++) { // Polyphase synthesis
 	                  	sb = 0;
-	                 		for (sb18=0; sb18<576; sb18+=18) {
+	                 		for (sb18=0; sb18<sb18limit; sb18+=18) {
 								samples2[sb] =  out_1d[sb18+ss];
 									 //filter2.input_sample(out_1d[sb18+ss], sb);
 	                         sb++;
@@ -1023,6 +1036,27 @@ final class LayerIIIDecoder implements FrameDecoder
     /**
 	 *
 	 */
+	/**
+	 * Sets a listener to receive each granule's MDCT coefficients in
+	 * place of synthesizing them, or null to synthesize them again.
+	 */
+	public void setSpectrumListener(SpectrumListener listener)
+	{
+		spectrumListener = listener;
+	}
+
+	/**
+	 * @return the number of coefficients of a granule, from the lowest,
+	 *			that come from long blocks.
+	 */
+	private int longLines(int ch, int gr)
+	{
+		gr_info_s gr_info = (si.ch[ch].gr[gr]);
+		if ((gr_info.window_switching_flag == 0) || (gr_info.block_type != 2))
+			return 576;
+		return (gr_info.mixed_block_flag != 0) ? 36 : 0;
+	}
+
 	private void reorder(float xr[][], int ch, int gr)
 	{
 	   gr_info_s gr_info = (si.ch[ch].gr[gr]);
@@ -1402,7 +1436,7 @@ final class LayerIIIDecoder implements FrameDecoder
     /**
 	 *
 	 */
-	private void antialias(int ch, int gr)
+	private void antialias(int ch, int gr, int sb18limit)
 	{
 	   int sb18, ss, sb18lim;
 	   gr_info_s gr_info = (si.ch[ch].gr[gr]);
@@ -1419,6 +1453,10 @@ final class LayerIIIDecoder implements FrameDecoder
 		} else {
 			sb18lim = 558;
 	   }
+	   // the butterflies between the last synthesized subband and the one
+	   // above still feed the former
+	   if (sb18lim > sb18limit)
+	   	  sb18lim = sb18limit;
 
 	   for (sb18=0; sb18 < sb18lim; sb18+=18) {
 	      for (ss=0;ss<8;ss++) {
@@ -1441,7 +1479,7 @@ final class LayerIIIDecoder implements FrameDecoder
 	float[] tsOutCopy = new float[18];
 	float[] rawout = new float[36];
 
-	private void hybrid(int ch, int gr)
+	private void hybrid(int ch, int gr, int sb18limit)
 	{
 	   int bt;
 	   int sb18;
@@ -1450,7 +1488,7 @@ final class LayerIIIDecoder implements FrameDecoder
 
 	   float[][] prvblk;
 
-	   for(sb18=0;sb18<576;sb18+=18)
+	   for(sb18=0;sb18<sb18limit;sb18+=18)
 	   {
 			bt = ((gr_info.window_switching_flag !=0 ) && (gr_info.mixed_block_flag !=0) &&
 					 (sb18 < 36)) ? 0 : gr_info.block_type;
@@ -1514,7 +1552,7 @@ final class LayerIIIDecoder implements FrameDecoder
 	 */
 	private void do_downmix()
 	{
-		for (int sb=0; sb<SSLIMIT; sb++) {
+		for (int sb=0; sb<SBLIMIT; sb++) {
 	   	for (int ss=0; ss<SSLIMIT; ss+=3) {
 	      	lr[0][sb][ss]   = (lr[0][sb][ss]   + lr[1][sb][ss])   * 0.5f;
 	      	lr[0][sb][ss+1] = (lr[0][sb][ss+1] + lr[1][sb][ss+1]) * 0.5f;
@@ -60,6 +60,19 @@ public abstract class Obuffer
 	    }
 	}
 
+  /**
+   * Accepts the first count of f's PCM samples. 
+   */
+	public void appendSamples(int channel, float[] f, int count)
+	{
+	    short s;
+	    for (int i=0; i<count;)
+	    {
+		  	s = clip(f[i++]);
+			append(channel, s); 
+	    }
+	}
+
   /**
    * Clip Sample to 16 Bits
    */
@@ -100,6 +100,26 @@ public class SampleBuffer extends Obuffer
 		bufferp[channel] = pos;
 	}
   
+	public void appendSamples(int channel, float[] f, int count)
+	{
+	    int pos = bufferp[channel];
+		
+		short s;
+		float fs;
+	    for (int i=0; i<count;)
+	    {
+		  	fs = f[i++];
+			fs = (fs>32767.0f ? 32767.0f 
+						   : (fs < -32767.0f ? -32767.0f : fs));
+			
+			s = (short)fs;
+			buffer[pos] = s;
+			pos += channels;
+	    }
+		
+		bufferp[channel] = pos;
+	}
+  
   
   /**
    * Write the samples to the file (Random Acces).
@@ -0,0 +1,56 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package v4lk.lwbd.decoders.processing.jlayer;
+
+/**
+ * Receives the frequency-domain data of each frame in place of PCM
+ * output. When a <code>Decoder</code> has a listener, frames stop short
+ * of synthesis: layer III frames are decoded as far as their MDCT
+ * coefficients, skipping antialiasing, the IMDCT and the polyphase
+ * filterbank, and layer I and II frames as far as their subband samples.
+ * Nothing is written to the output buffer.
+ * 
+ * @see Decoder#setSpectrumListener(SpectrumListener)
+ */
+public interface SpectrumListener
+{
+	/**
+	 * Receives the dequantized MDCT coefficients of one layer III granule
+	 * of one channel, after stereo processing, in order of frequency.
+	 * Where the granule uses short blocks, the coefficients of the three
+	 * windows for each frequency are next to each other.
+	 * 
+	 * @param channel	0 for the left or only channel (or the downmix), 1 for the right.
+	 * @param coefficients	the 576 coefficients. Only valid during the call.
+	 * @param longLines	the number of coefficients, from the lowest, that
+	 *					belong to long blocks: 576, 36 for mixed blocks, 
+	 *					or 0 for short blocks.
+	 */
+	public void granule(int channel, float[] coefficients, int longLines);
+	
+	/**
+	 * Receives one time slot of the 32 subband samples of one layer I 
+	 * or II channel.
+	 * 
+	 * @param channel	0 for the left or only channel, 1 for the right.
+	 * @param samples	the samples, lowest subband first. Only valid 
+	 *					during the call.
+	 */
+	public void subbandSamples(int channel, float[] samples);
+}
@@ -47,11 +47,14 @@ final class SynthesisFilter
   private int				 channel;
   private float 			 scalefactor;
   private float[]			 eq;
+  private SpectrumListener	 spectrumListener;	// receives the samples in place of synthesis
 	
 	/**
-	 * Quality value for controlling CPU usage/quality tradeoff. 
+	 * Quality value for controlling CPU usage/quality tradeoff: the
+	 * factor the output sample rate is divided by. Only the lowest
+	 * 32 / quality subbands are synthesized, and only every quality-th
+	 * PCM sample is calculated.
 	 */
-	/*
 	private int				quality;
 	
 	private int				v_inc;
@@ -61,7 +64,6 @@ final class SynthesisFilter
 	public static final int	HIGH_QUALITY = 1;
 	public static final int MEDIUM_QUALITY = 2;
 	public static final int LOW_QUALITY = 4;
-	*/
 	
   /**
    * Contructor.
@@ -70,10 +72,14 @@ final class SynthesisFilter
    */
   public SynthesisFilter(int channelnumber, float factor, float[] eq0)
   {  	 
-	  if (d==null)
+	  // filters may be created on several threads at once
+	  synchronized (SynthesisFilter.class)
 	  {
-			d = load_d();
-			d16 = splitArray(d, 16);
+		  if (d==null)
+		  {
+				d = load_d();
+				d16 = splitArray(d, 16);
+		  }
 	  }
 	  
 	  v1 = new float[512];
@@ -82,11 +88,20 @@ final class SynthesisFilter
      channel = channelnumber;
 	 scalefactor = factor;
 	 setEQ(eq);	 
-	 //setQuality(HIGH_QUALITY);
+	 setQuality(HIGH_QUALITY);
 	 
      reset();
   }
   
+  /**
+   * Sets a listener to receive each time slot's subband samples in
+   * place of synthesizing them, or null to synthesize them again.
+   */
+  public void setSpectrumListener(SpectrumListener listener)
+  {
+	  spectrumListener = listener;
+  }
+	
   public void setEQ(float[] eq0)
   {
 	 this.eq = eq0;	 
@@ -103,8 +118,11 @@ final class SynthesisFilter
 	  
   }
   
-	/*
-	private void setQuality(int quality0)
+	/**
+	 * Sets the quality: HIGH_QUALITY for output at the full sample rate,
+	 * MEDIUM_QUALITY for half of it, LOW_QUALITY for a quarter.
+	 */
+	public void setQuality(int quality0)
 	{
 	  	switch (quality0)
 	  	{		
@@ -123,7 +141,14 @@ final class SynthesisFilter
 	{
 		return quality;	
 	}
-	*/
+	
+	/**
+	 * @return the number of subbands synthesized, from the lowest.
+	 */
+	public int getSubbands()
+	{
+		return 32 / quality;
+	}
   
   /**
    * Reset the synthesis filter.
@@ -155,12 +180,13 @@ final class SynthesisFilter
    */
   public void input_sample(float sample, int subbandnumber)
   {	 	 		  
-	  samples[subbandnumber] = eq[subbandnumber]*sample;
+	  if (subbandnumber < 32 / quality)
+		  samples[subbandnumber] = eq[subbandnumber]*sample;
   }
 
   public void input_samples(float[] s)
   {
-	  for (int i=31; i>=0; i--)
+	  for (int i=32/quality-1; i>=0; i--)
 	  {		
 		 samples[i] = s[i]*eq[i];
 	  }
@@ -859,12 +885,12 @@ final class SynthesisFilter
   private void compute_pcm_samples0(Obuffer buffer)
   {
 	final float[] vp = actual_v;	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 		float pcm_sample;
 		final float[] dp = d16[i];
@@ -888,19 +914,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 	} // for
   }
   
   private void compute_pcm_samples1(Obuffer buffer)
   {
 	final float[] vp = actual_v;	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -925,19 +951,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
          } // for
   }
     private void compute_pcm_samples2(Obuffer buffer)
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -962,7 +988,7 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
 	}
 	
@@ -971,12 +997,12 @@ final class SynthesisFilter
 	final float[] vp = actual_v;
 	
 	int idx = 0;
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1001,7 +1027,7 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
 	  }
 			
@@ -1009,12 +1035,12 @@ final class SynthesisFilter
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1039,7 +1065,7 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   
@@ -1047,12 +1073,12 @@ final class SynthesisFilter
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1077,19 +1103,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   
   private void compute_pcm_samples6(Obuffer buffer)
   {
 	final float[] vp = actual_v;	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1114,7 +1140,7 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   
@@ -1122,12 +1148,12 @@ final class SynthesisFilter
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1152,19 +1178,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
 	}
   private void compute_pcm_samples8(Obuffer buffer)
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1189,7 +1215,7 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   
@@ -1197,12 +1223,12 @@ final class SynthesisFilter
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1227,19 +1253,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   
   private void compute_pcm_samples10(Obuffer buffer)
   {
 	final float[] vp = actual_v;	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1264,19 +1290,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   private void compute_pcm_samples11(Obuffer buffer)
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1301,18 +1327,18 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
     private void compute_pcm_samples12(Obuffer buffer)
   {
 	final float[] vp = actual_v;	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 			    final float[] dp = d16[i];
 				float pcm_sample;
@@ -1337,19 +1363,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
 	}
   private void compute_pcm_samples13(Obuffer buffer)
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1374,19 +1400,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   private void compute_pcm_samples14(Obuffer buffer)
   {
 	final float[] vp = actual_v;
 	
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				final float[] dp = d16[i];
 				float pcm_sample;
@@ -1411,19 +1437,19 @@ final class SynthesisFilter
 
             tmpOut[i] = pcm_sample;
 			
-			dvp += 16;
+			dvp += inc;
 			} // for
   }
   private void compute_pcm_samples15(Obuffer buffer)
   {
 	final float[] vp = actual_v;
 		
-	//int inc = v_inc;
+	final int inc = v_inc;
 	final float[] tmpOut = _tmpOut;
 	 int dvp =0;
 	
 			// fat chance of having this loop unroll
-			for( int i=0; i<32; i++)
+			for( int i=0; i<32; i+=quality)
 			{
 				float pcm_sample;
 				final float dp[] = d16[i];
@@ -1446,7 +1472,7 @@ final class SynthesisFilter
 					) * scalefactor);
 
             tmpOut[i] = pcm_sample;			
-			dvp += 16;
+			dvp += inc;
 			} // for
 		}
 	 	 	 	 
@@ -1507,37 +1533,20 @@ private void compute_pcm_samples(Obuffer buffer)
 		
 	if (buffer!=null)
 	{		
-		buffer.appendSamples(channel, _tmpOut);
-	}
-	 
-/*
-	 // MDM: I was considering putting in quality control for
-	 // low-spec CPUs, but the performance gain (about 10-15%) 
-	 // did not justify the considerable drop in audio quality.
-		switch (inc)
+		if (quality == HIGH_QUALITY)
 		{
-		case 16:		 
-		    buffer.appendSamples(channel, tmpOut);
-		    break;
-		case 32:
-			for (int i=0; i<16; i++)
-			{
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]); 
-			}
-			break;			
-		case 64:
-			for (int i=0; i<8; i++)
-			{
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]); 
-			}
-			break;			
-	
+			buffer.appendSamples(channel, _tmpOut);
+		}
+		else
+		{
+			// only every quality-th sample was calculated
+			final float[] tmpOut = _tmpOut;
+			int count = 0;
+			for (int i=0; i<32; i+=quality)
+				tmpOut[count++] = tmpOut[i];
+			buffer.appendSamples(channel, tmpOut, count);
 		}
-*/	 
+	}
   }
 
   /**
@@ -1546,11 +1555,18 @@ private void compute_pcm_samples(Obuffer buffer)
 	
   public void calculate_pcm_samples(Obuffer buffer)
   {
-	compute_new_v();	
-	compute_pcm_samples(buffer);
+	if (spectrumListener != null)
+	{
+		spectrumListener.subbandSamples(channel, samples);
+	}
+	else
+	{
+		compute_new_v();	
+		compute_pcm_samples(buffer);
     
-	actual_write_pos = (actual_write_pos + 1) & 0xf;
-	actual_v = (actual_v == v1) ? v2 : v1;
+		actual_write_pos = (actual_write_pos + 1) & 0xf;
+		actual_v = (actual_v == v1) ? v2 : v1;
+	}
 
 	// initialize samples[]:	
     //for (register float *floatp = samples + 32; floatp > samples; )
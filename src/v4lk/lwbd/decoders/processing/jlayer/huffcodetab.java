@@ -60,6 +60,8 @@ final class huffcodetab
   private int[]   			 hlen=null;             /* pointer to array[xlen][ylen]		      */
   private int[][]			 val=null;		        /* decoder tree		    	              */
   private int 				 treelen;	            /* length of decoder tree  	              */
+  private int[]				 lookup=null;	        /* lookup tables, see buildLookup()        */
+  private int				 lookupBits;	        /* bits indexing the primary lookup table  */
 
   private static int ValTab0[][] = {
 	{0,0}	// dummy
@@ -419,6 +421,24 @@ final class huffcodetab
 
   private static int[] bitbuf = new int[32];
   
+  /**
+   * Maximum number of bits indexing a primary and a secondary lookup table.
+   */
+  private static final int	 PRIMARY_BITS = 9;
+  private static final int	 SECONDARY_BITS = 6;
+  
+  /**
+   * Code length of lookup entries whose codes can't be decoded from the
+   * tables, which are decoded by walking the tree instead.
+   */
+  private static final int	 WALK = 0;
+  
+  /**
+   * Lookup tables being built, and the number of entries used.
+   */
+  private static int[]		 building;
+  private static int		 buildingSize;
+  
   /**
    * Big Constructor : Computes all Huffman Tables.
    */
@@ -438,6 +458,100 @@ final class huffcodetab
     val = VAL;
     treelen = TREELEN;
   }
+  
+  /**
+   * Build the lookup tables. The primary table is indexed by the first
+   * bits of a code; each entry holds the values and length of the code
+   * those bits begin, or points to a secondary table indexed by the next
+   * bits if the code is longer. Entries are:
+   *   (x << 12) | (y << 8) | length      for codes,
+   *   0x80000000 | (bits << 24) | offset  for secondary tables,
+   *   WALK                                for codes the tree walk handles.
+   */
+  private void buildLookup()
+  {
+	if (val == null || treelen == 0 || val[0][0] == 0)
+		return;
+	
+	building = new int[1 << PRIMARY_BITS];
+	buildingSize = 0;
+	lookupBits = Math.min(PRIMARY_BITS, height(val, 0, 0));
+	fillTable(val, 0, 0, lookupBits);
+	
+	lookup = new int[buildingSize];
+	System.arraycopy(building, 0, lookup, 0, buildingSize);
+	building = null;
+  }
+  
+  /**
+   * Fill a lookup table with the codes below a node of the tree.
+   * @param root	index of the node in val
+   * @param depth	number of bits read to get to the node
+   * @param bits	number of bits indexing the table
+   * @return the table's offset in the lookup tables
+   */
+  private static int fillTable(int[][] val, int root, int depth, int bits)
+  {
+	int size = 1 << bits;
+	int offset = buildingSize;
+	buildingSize += size;
+	if (buildingSize > building.length)
+	{
+		int[] grown = new int[Math.max(buildingSize, building.length * 2)];
+		System.arraycopy(building, 0, grown, 0, offset);
+		building = grown;
+	}
+	
+	for (int index = 0; index < size; index++)
+	{
+		int point = root;
+		int len = 0;
+		while (len < bits && point >= 0 && val[point][0] != 0)
+		{
+			point = step(val, point, (index >>> (bits - 1 - len)) & 1);
+			len++;
+		}
+		
+		int entry;
+		if (point < 0 || depth + len > 32)
+			entry = WALK;	// the walk gives up after 32 bits
+		else if (val[point][0] == 0)
+			entry = (val[point][1] & ~0xff) == 0 ? (val[point][1] << 8) | len : WALK;
+		else
+		{
+			int sub = Math.min(SECONDARY_BITS, height(val, point, depth + len));
+			entry = 0x80000000 | (sub << 24) | fillTable(val, point, depth + len, sub);
+		}
+		building[offset + index] = entry;
+	}
+	return offset;
+  }
+  
+  /**
+   * Follow one bit down the tree, as huffman_decoder() does.
+   * @return the index of the next node, or -1 if it's outside the tree
+   */
+  private static int step(int[][] val, int point, int bit)
+  {
+	while (point >= 0 && point < val.length && val[point][bit] >= MXOFF)
+		point += val[point][bit];
+	if (point < 0 || point >= val.length)
+		return -1;
+	point += val[point][bit];
+	return point >= 0 && point < val.length ? point : -1;
+  }
+  
+  /**
+   * @return the number of bits of the longest code below a node, capped
+   *         where the tree walk would give up
+   */
+  private static int height(int[][] val, int point, int depth)
+  {
+	if (point < 0 || val[point][0] == 0 || depth >= 32)
+		return 0;
+	return 1 + Math.max(height(val, step(val, point, 0), depth + 1),
+	                    height(val, step(val, point, 1), depth + 1));
+  }
 
   
   
@@ -470,6 +584,54 @@ final class huffcodetab
 
      /* Lookup in Huffman table. */
 
+	 if (h.lookup != null)
+	 {
+		// look the code up by its first bits, in subtables if it's long
+		int[] lookup = h.lookup;
+		int n = h.lookupBits;
+		int skipped = 0;
+		int entry = lookup[br.hpeekbits(n)];
+		while (entry < 0)
+		{
+			br.hskipbits(n);
+			skipped += n;
+			n = (entry >>> 24) & 0x7f;
+			entry = lookup[(entry & 0xffffff) + br.hpeekbits(n)];
+		}
+		
+		int len = entry & 0xff;
+		if (len != WALK)
+		{
+			br.hskipbits(len);
+			x[0] = (entry >>> 12) & 0xf;
+			y[0] = (entry >>> 8) & 0xf;
+			error = 0;
+		}
+		else
+		{
+			br.rewindNbits(skipped);
+			error = walk(h, x, y, br);
+		}
+	 }
+	 else
+	 {
+		error = walk(h, x, y, br);
+	 }
+	 
+	 return decodeSigns(h, x, y, v, w, br, error);
+  }
+  
+  /**
+   * Decode one code by walking the tree a bit at a time.
+   */
+  private static int walk(huffcodetab h, int[] x, int[] y, BitReserve br)
+  {
+	int dmask = 1 << ((4 * 8) - 1);
+  	int level;
+  	int point = 0;
+  	int error = 1;
+  	level = dmask;
+
 	 /*int bitsAvailable = 0;	 
 	 int bitIndex = 0;
 	 
@@ -514,6 +676,14 @@ final class huffcodetab
 		if (unread>0)
 			br.rewindNbits(unread);
 	 */
+	 return error;
+  }
+  
+  /**
+   * Decode the sign bits and linbits that follow a code.
+   */
+  private static int decodeSigns(huffcodetab h, int[] x, int[] y, int[] v, int[] w, BitReserve br, int error)
+  {
   	  /* Process sign encodings for quadruples tables. */
       // System.out.println(h.tablename);
   	  if (h.tablename0 == '3' && (h.tablename1 == '2' || h.tablename1 == '3'))
@@ -555,7 +725,10 @@ final class huffcodetab
   	   return error;
   }
 
-  public static void inithuff()
+  /**
+   * Compute the tables. Safe to call from several decoders on different threads.
+   */
+  public static synchronized void inithuff()
   {
 	
 	if (ht!=null)
@@ -596,5 +769,17 @@ final class huffcodetab
     ht[31] = new huffcodetab("31 ",16,16,13,8191,24,null,null,ValTab24,512);
     ht[32] = new huffcodetab("32 ",1,16,0,0,-1,null,null,ValTab32,31);
     ht[33] = new huffcodetab("33 ",1,16,0,0,-1,null,null,ValTab33,31);
+    
+    // tables 16..23 and 24..31 share their trees, and so their lookup tables
+    for (int i = 0; i < HTN; i++)
+    {
+    	if (i > 0 && ht[i].val == ht[i-1].val)
+    	{
+    		ht[i].lookup = ht[i-1].lookup;
+    		ht[i].lookupBits = ht[i-1].lookupBits;
+    	}
+    	else
+    		ht[i].buildLookup();
+    }
   }
 }
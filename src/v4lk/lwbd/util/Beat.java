@@ -9,6 +9,11 @@ package v4lk.lwbd.util;
 
 public class Beat implements Cloneable {
 
+    /**
+     * band of a beat detected over the whole spectrum rather than in one band
+     */
+    public static final int ALL_BANDS = -1;
+
     /**
      * the millisecond that beat occurs in the song
      */
@@ -17,10 +22,19 @@ public class Beat implements Cloneable {
      * beat energy, normalized to [0..1]
      */
     public final float energy;
+    /**
+     * index of the FilterBank band the beat was detected in, or ALL_BANDS
+     */
+    public final int band;
 
     public Beat(long timeMs, float energy){
+        this(timeMs, energy, ALL_BANDS);
+    }
+
+    public Beat(long timeMs, float energy, int band){
         this.timeMs = timeMs;
         this.energy = energy;
+        this.band = band;
     }
 
     @Override
@@ -33,7 +47,8 @@ public class Beat implements Cloneable {
         int minutes = (int) (totalSeconds / 60f);
         int seconds = totalSeconds - (60 * minutes);
 
-        return "energy " + String.format("%.2f", energy) + " @ " + minutes + ":" + seconds;
+        String s = "energy " + String.format("%.2f", energy) + " @ " + minutes + ":" + seconds;
+        return band == ALL_BANDS ? s : s + " in band " + band;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,260 @@
+package v4lk.lwbd.util;
+
+import java.util.Arrays;
+
+/**
+ * Beats indexed by time, for answering "which beats fall between t0 and t1" and
+ * "what is the next beat after t" many times a second, e.g. once per rendered frame
+ * during playback.
+ *
+ * Range queries are binary searches, O(log n). A Cursor answers nextBeatAfter() in
+ * amortized constant time as long as the times it's asked about move forward, and
+ * re-seeks in O(log d) when they jump by d beats in either direction, so scrubbing
+ * is cheap too.
+ *
+ * filterByEnergy() returns a view of the index holding only some of its beats. Views
+ * share the index's time and energy arrays and only store which beats they hold, so
+ * any number of them can be kept for one track.
+ *
+ * An index never changes once built; it can be shared between threads, though each
+ * thread needs its own Cursor.
+ *
+ * @author Quentin Young
+ */
+public class BeatIndex {
+
+    /**
+     * times of every beat in the underlying track, shared by all views
+     */
+    private final int[] times;
+    /**
+     * energies of every beat in the underlying track, shared by all views
+     */
+    private final float[] energies;
+    /**
+     * indexes into times and energies of the beats in this view, in time order, or
+     * null if the view holds every beat
+     */
+    private final int[] members;
+    private final int size;
+
+    /**
+     * Index the beats of a track. The track can be modified afterwards without
+     * affecting the index.
+     * @param track beats to index
+     */
+    public BeatIndex(BeatTrack track) {
+        this(Arrays.copyOf(track.times, track.size), Arrays.copyOf(track.energies, track.size), null, track.size);
+    }
+
+    /**
+     * Index an array of beats.
+     * @param beats array of Beat objects, sorted by time
+     */
+    public BeatIndex(Beat[] beats) {
+        this(BeatTrack.fromBeats(beats));
+    }
+
+    private BeatIndex(int[] times, float[] energies, int[] members, int size) {
+        this.times = times;
+        this.energies = energies;
+        this.members = members;
+        this.size = size;
+    }
+
+    /**
+     * @return the number of beats in this index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of a beat in this index
+     * @return the millisecond that beat occurs at
+     */
+    public long getTimeMs(int index) {
+        checkIndex(index);
+        return time(index);
+    }
+
+    /**
+     * @param index index of a beat in this index
+     * @return that beat's energy
+     */
+    public float getEnergy(int index) {
+        checkIndex(index);
+        return energies[members == null ? index : members[index]];
+    }
+
+    /**
+     * @param index index of a beat in this index
+     * @return a new Beat with that beat's time and energy
+     */
+    public Beat get(int index) {
+        return new Beat(getTimeMs(index), getEnergy(index));
+    }
+
+    /**
+     * @param timeMs a time in milliseconds
+     * @return the index of the first beat at or after that time, or size() if there is none
+     */
+    public int indexAtOrAfter(long timeMs) {
+        return search(0, size, timeMs - 1);
+    }
+
+    /**
+     * @param timeMs a time in milliseconds
+     * @return the index of the first beat strictly after that time, or size() if there is none
+     */
+    public int indexAfter(long timeMs) {
+        return search(0, size, timeMs);
+    }
+
+    /**
+     * Count the beats in a time range. The range's beats are the ones at indexes
+     * indexAtOrAfter(fromMs) up to, but not including, indexAtOrAfter(toMs).
+     * @param fromMs start of the range, inclusive
+     * @param toMs end of the range, exclusive
+     * @return the number of beats in [fromMs, toMs)
+     */
+    public int countInRange(long fromMs, long toMs) {
+        if (toMs <= fromMs)
+            return 0;
+        return indexAtOrAfter(toMs) - indexAtOrAfter(fromMs);
+    }
+
+    /**
+     * @param fromMs start of the range, inclusive
+     * @param toMs end of the range, exclusive
+     * @return a new Beat[] holding the beats in [fromMs, toMs)
+     */
+    public Beat[] getBeatsInRange(long fromMs, long toMs) {
+        int first = indexAtOrAfter(fromMs);
+        Beat[] beats = new Beat[countInRange(fromMs, toMs)];
+        for (int i = 0; i < beats.length; i++)
+            beats[i] = get(first + i);
+        return beats;
+    }
+
+    /**
+     * Get a view of this index holding only the beats whose energy is strictly
+     * between minimum and maximum, like BeatsProcessor.filterByEnergy(). The view
+     * shares this index's beat data.
+     * @param minimum minimum sound energy [0..1]
+     * @param maximum maximum sound energy [0..1]
+     * @return the view
+     */
+    public BeatIndex filterByEnergy(float minimum, float maximum) {
+        int[] kept = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int beat = members == null ? i : members[i];
+            if (energies[beat] > minimum && energies[beat] < maximum)
+                kept[count++] = beat;
+        }
+        return new BeatIndex(times, energies, Arrays.copyOf(kept, count), count);
+    }
+
+    /**
+     * @return a new cursor, positioned at the start of the index
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Follows a play position through the index. Remembers where the last query
+     * left off, so a query close to the last one only looks at the few beats in
+     * between.
+     */
+    public class Cursor {
+        /**
+         * index of the first beat after the last time queried
+         */
+        private int position;
+
+        private Cursor() {
+        }
+
+        /**
+         * @param timeMs a time in milliseconds
+         * @return the index of the first beat strictly after that time, or -1 if there is none
+         */
+        public int nextIndexAfter(long timeMs) {
+            seek(timeMs);
+            return position < size ? position : -1;
+        }
+
+        /**
+         * @param timeMs a time in milliseconds
+         * @return the millisecond of the first beat strictly after that time, or -1 if there is none
+         */
+        public long nextBeatAfter(long timeMs) {
+            seek(timeMs);
+            return position < size ? time(position) : -1;
+        }
+
+        /**
+         * Move the cursor to the first beat strictly after a time. Gallops from
+         * the current position, doubling the step until it passes the time, then
+         * binary searches the last step.
+         */
+        private void seek(long timeMs) {
+            int low, high;
+            if (position < size && time(position) <= timeMs) {
+                // forward: the answer is in (position, size]
+                int step = 1;
+                low = position + 1;
+                while (position + step < size && time(position + step) <= timeMs) {
+                    low = position + step + 1;
+                    step <<= 1;
+                }
+                high = Math.min(position + step, size);
+            } else if (position > 0 && time(position - 1) > timeMs) {
+                // backward: the answer is in [0, position - 1]
+                int step = 1;
+                high = position - 1;
+                while (position - 1 - step >= 0 && time(position - 1 - step) > timeMs) {
+                    high = position - 1 - step;
+                    step <<= 1;
+                }
+                low = Math.max(position - 1 - step, 0);
+            } else {
+                // still between the same two beats
+                return;
+            }
+            position = search(low, high, timeMs);
+        }
+    }
+
+    /**
+     * @return the index in [low, high] of the first beat after timeMs, assuming
+     *         every beat before low is at or before it and every beat from high on
+     *         is after it
+     */
+    private int search(int low, int high, long timeMs) {
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (time(mid) <= timeMs)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private long time(int index) {
+        return times[members == null ? index : members[index]];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+
+    @Override
+    public String toString() {
+        return "BeatIndex of " + size + " beats";
+    }
+}
@@ -0,0 +1,133 @@
+package v4lk.lwbd.util;
+
+import java.util.Arrays;
+
+/**
+ * A time-ordered sequence of beats stored as parallel primitive arrays rather than
+ * one Beat object per beat. Holds the same information as a Beat[] in a fraction
+ * of the memory, which matters when many tracks' beats are kept around at once.
+ *
+ * Times are stored as int milliseconds, which covers a little over 24 days of audio.
+ *
+ * @author Quentin Young
+ */
+public class BeatTrack {
+
+    /**
+     * beat times in milliseconds; only the first size entries are valid
+     */
+    int[] times;
+    /**
+     * beat energies, normalized to [0..1]; only the first size entries are valid
+     */
+    float[] energies;
+    /**
+     * number of beats in this track
+     */
+    int size;
+
+    /**
+     * Create an empty track
+     * @param capacity number of beats the track can hold before it has to grow
+     */
+    public BeatTrack(int capacity) {
+        times = new int[capacity];
+        energies = new float[capacity];
+    }
+
+    /**
+     * Append a beat to the end of this track. Beats must be added in time order.
+     * @param timeMs the millisecond the beat occurs at
+     * @param energy beat energy
+     */
+    public void add(long timeMs, float energy) {
+        if (timeMs < 0 || timeMs > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Beat time out of range: " + timeMs);
+
+        if (size == times.length) {
+            int capacity = Math.max(16, size * 2);
+            times = Arrays.copyOf(times, capacity);
+            energies = Arrays.copyOf(energies, capacity);
+        }
+
+        times[size] = (int) timeMs;
+        energies[size] = energy;
+        size++;
+    }
+
+    /**
+     * @return the number of beats in this track
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index index of a beat in this track
+     * @return the millisecond that beat occurs at
+     */
+    public long getTimeMs(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    /**
+     * @param index index of a beat in this track
+     * @return that beat's energy
+     */
+    public float getEnergy(int index) {
+        checkIndex(index);
+        return energies[index];
+    }
+
+    /**
+     * @param index index of a beat in this track
+     * @return a new Beat with that beat's time and energy
+     */
+    public Beat get(int index) {
+        checkIndex(index);
+        return new Beat(times[index], energies[index]);
+    }
+
+    /**
+     * Release any unused capacity.
+     */
+    public void trimToSize() {
+        if (times.length != size) {
+            times = Arrays.copyOf(times, size);
+            energies = Arrays.copyOf(energies, size);
+        }
+    }
+
+    /**
+     * @return a new Beat[] holding the same beats as this track
+     */
+    public Beat[] toBeatArray() {
+        Beat[] beats = new Beat[size];
+        for (int i = 0; i < size; i++)
+            beats[i] = new Beat(times[i], energies[i]);
+        return beats;
+    }
+
+    /**
+     * Create a track from an array of Beat objects.
+     * @param beats array of Beat objects, sorted by time
+     * @return a new track holding the same beats
+     */
+    public static BeatTrack fromBeats(Beat[] beats) {
+        BeatTrack track = new BeatTrack(beats.length);
+        for (Beat b : beats)
+            track.add(b.timeMs, b.energy);
+        return track;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+    }
+
+    @Override
+    public String toString() {
+        return "BeatTrack of " + size + " beats";
+    }
+}
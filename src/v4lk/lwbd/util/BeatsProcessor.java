@@ -53,4 +53,57 @@ public class BeatsProcessor {
 
         return result.toArray(new Beat[result.size()]);
     }
-}
\ No newline at end of file
+    /**
+     * Thins beats in place so that consecutive beats are separated by
+     * at least <gapMs> milliseconds. When two beats are closer than
+     * that, the one with more sound energy is kept.
+     *
+     * @param track track to thin. Modified in place.
+     * @param gapMs minimum time between beats in milliseconds
+     * @return the same track, for convenience
+     */
+    public static BeatTrack thinBeats(BeatTrack track, long gapMs) {
+        if (track.size == 0)
+            return track;
+
+        int[] times = track.times;
+        float[] energies = track.energies;
+        int last = 0;
+        for (int i = 1; i < track.size; i++) {
+            if (times[i] - times[last] >= gapMs) {
+                last++;
+                times[last] = times[i];
+                energies[last] = energies[i];
+            } else if (energies[i] > energies[last]) {
+                times[last] = times[i];
+                energies[last] = energies[i];
+            }
+        }
+        track.size = last + 1;
+
+        return track;
+    }
+    /**
+     * Filters beats by sound energy, in place.
+     *
+     * @param track track to filter. Modified in place.
+     * @param minimum minimum sound energy [0..1]
+     * @param maximum maximum sound energy [0..1]
+     * @return the same track, for convenience
+     */
+    public static BeatTrack filterByEnergy(BeatTrack track, float minimum, float maximum) {
+        int[] times = track.times;
+        float[] energies = track.energies;
+        int kept = 0;
+        for (int i = 0; i < track.size; i++) {
+            if (energies[i] > minimum && energies[i] < maximum) {
+                times[kept] = times[i];
+                energies[kept] = energies[i];
+                kept++;
+            }
+        }
+        track.size = kept;
+
+        return track;
+    }
+}